@@ -18,6 +18,15 @@ public class Configuration {
      * The configured hostname of the database server.
      */
     private String hostname;
+    /**
+     * The configured storage mode of the database server.
+     */
+    private String storageMode;
+    /**
+     * The configured number of records above which searches that cannot
+     * use an index are run in parallel.
+     */
+    private String scanThreshold;
 
     /**
      * Class constructor specifying the database file and hostname.
@@ -26,8 +35,37 @@ public class Configuration {
      * @param hostname      the configured hostname.
      */
     public Configuration(String databaseFile, String hostname) {
+        this(databaseFile, hostname, null);
+    }
+
+    /**
+     * Class constructor specifying the database file, hostname and
+     * storage mode.
+     *
+     * @param databaseFile  the configured database file.
+     * @param hostname      the configured hostname.
+     * @param storageMode   the configured storage mode.
+     */
+    public Configuration(String databaseFile, String hostname,
+            String storageMode) {
+        this(databaseFile, hostname, storageMode, null);
+    }
+
+    /**
+     * Class constructor specifying the database file, hostname, storage
+     * mode and parallel scan threshold.
+     *
+     * @param databaseFile   the configured database file.
+     * @param hostname       the configured hostname.
+     * @param storageMode    the configured storage mode.
+     * @param scanThreshold  the configured parallel scan threshold.
+     */
+    public Configuration(String databaseFile, String hostname,
+            String storageMode, String scanThreshold) {
         this.databaseFile = databaseFile;
         this.hostname = hostname;
+        this.storageMode = storageMode;
+        this.scanThreshold = scanThreshold;
     }
 
     /**
@@ -48,4 +86,24 @@ public class Configuration {
     public String getHostname() {
         return hostname;
     }
+
+    /**
+     * Gets the storage mode the database server is configured to use
+     * when updating the database file.
+     *
+     * @return  the configured storage mode, or null if none is configured.
+     */
+    public String getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Gets the number of records above which the database server runs
+     * searches that cannot use an index in parallel.
+     *
+     * @return  the configured threshold, or null if none is configured.
+     */
+    public String getScanThreshold() {
+        return scanThreshold;
+    }
 }
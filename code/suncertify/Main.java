@@ -29,6 +29,7 @@ import javax.swing.UIManager;
 import suncertify.server.Services;
 import suncertify.server.ServicesImpl;
 import suncertify.server.RemoteServicesImpl;
+import suncertify.db.Data;
 import suncertify.client.GUI;
 
 /**
@@ -56,6 +57,16 @@ public class Main {
      * A constant representing the key for path configuration key/value pair.
      */
     private final static String PATH_ENTRY = "Path : ";
+    /**
+     * A constant representing the key for storage configuration key/value
+     * pair.
+     */
+    private final static String STORAGE_ENTRY = "Storage : ";
+    /**
+     * A constant representing the key for parallel scan threshold
+     * configuration key/value pair.
+     */
+    private final static String SCAN_THRESHOLD_ENTRY = "Scan threshold : ";
     /**
      * A constant representing name of the configuration file.
      */
@@ -104,7 +115,9 @@ public class Main {
             /* Persist the new configuration information. */
             this.writeConfigurationFile(new Configuration(
                     selectedFile.getAbsolutePath(),
-                        currentConfig.getHostname()));
+                        currentConfig.getHostname(),
+                        currentConfig.getStorageMode(),
+                        currentConfig.getScanThreshold()));
         } else {
             System.exit(1);
         }
@@ -122,9 +135,27 @@ public class Main {
      *@return               true if the server was started, else false.
      */
     private boolean startDatabaseServer(String mode, File databaseFile) {
+        Configuration configuration = readConfigurationFile();
+        /* Storage mode defaults to file storage if not configured. */
+        String storageMode = configuration.getStorageMode();
+        if (storageMode == null || storageMode.length() == 0) {
+            storageMode = Data.STORAGE_FILE;
+        }
+        /* The scan threshold keeps its default if not configured. */
+        String scanThreshold = configuration.getScanThreshold();
+        if (scanThreshold != null && scanThreshold.trim().length() > 0) {
+            try {
+                Data.getInstance(databaseFile.getPath(), storageMode)
+                        .setParallelScanThreshold(
+                        Integer.parseInt(scanThreshold.trim()));
+            } catch (NumberFormatException nfe) {
+                System.err.println("Ignoring invalid scan threshold : "
+                        + scanThreshold);
+            }
+        }
         /* Starts a local (non-networked) server. */
         if (mode.equalsIgnoreCase(SERVER_MODE_LOCAL)) {
-            services = ServicesImpl.getInstance(databaseFile);
+            services = ServicesImpl.getInstance(databaseFile, storageMode);
             return true; 
         }
         /* Starts a server that accepts connections from remote clients. */
@@ -132,7 +163,8 @@ public class Main {
             try {
                 /* Create an instance of the RMI registry. */
                 LocateRegistry.createRegistry(SERVER_PORT);
-                services = RemoteServicesImpl.getInstance(databaseFile);
+                services = RemoteServicesImpl.getInstance(databaseFile,
+                        storageMode);
             } catch (RemoteException re) {
                 System.err.println("Problem starting database server");
                 return false;
@@ -185,6 +217,8 @@ public class Main {
     private Configuration readConfigurationFile() {
         String databaseFile = null;
         String hostname = null;
+        String storageMode = null;
+        String scanThreshold = null;
         BufferedReader br = null;
         try {
             br = new BufferedReader(new FileReader(CONFIG_FILE_NAME));
@@ -203,13 +237,23 @@ public class Main {
                 } else if (line != null && line.indexOf(HOST_ENTRY) != -1) {
                     hostname = line.substring(line.indexOf(HOST_ENTRY)
                             + HOST_ENTRY.length(), line.length());
+                } else if (line != null
+                        && line.indexOf(STORAGE_ENTRY) != -1) {
+                    storageMode = line.substring(line.indexOf(STORAGE_ENTRY)
+                            + STORAGE_ENTRY.length(), line.length());
+                } else if (line != null
+                        && line.indexOf(SCAN_THRESHOLD_ENTRY) != -1) {
+                    scanThreshold = line.substring(
+                            line.indexOf(SCAN_THRESHOLD_ENTRY)
+                            + SCAN_THRESHOLD_ENTRY.length(), line.length());
                 }
             }
         } catch (IOException ioe) {
             System.err.println("Error reading configuration file");
             System.exit(1);
         }
-        return new Configuration(databaseFile, hostname);
+        return new Configuration(databaseFile, hostname, storageMode,
+                scanThreshold);
     }
 
 
@@ -226,6 +270,8 @@ public class Main {
                     false));
             String databaseFile = configuration.getDatabaseFile();
             String hostname = configuration.getHostname();
+            String storageMode = configuration.getStorageMode();
+            String scanThreshold = configuration.getScanThreshold();
             if (databaseFile != null) {
                 bw.write(PATH_ENTRY + configuration.getDatabaseFile() + "\n");
             } else {
@@ -236,6 +282,12 @@ public class Main {
             } else {
                 bw.write(HOST_ENTRY + "\n");
             }
+            if (storageMode != null) {
+                bw.write(STORAGE_ENTRY + storageMode + "\n");
+            }
+            if (scanThreshold != null) {
+                bw.write(SCAN_THRESHOLD_ENTRY + scanThreshold + "\n");
+            }
             bw.flush();
             bw.close();
         } catch (FileNotFoundException fnf) {
@@ -441,7 +493,9 @@ public class Main {
                         Configuration currentConfig = readConfigurationFile();
                         writeConfigurationFile(new Configuration(
                                 currentConfig.getDatabaseFile(),
-                                hostTextField.getText()));
+                                hostTextField.getText(),
+                                currentConfig.getStorageMode(),
+                                currentConfig.getScanThreshold()));
                         startNetworkClient(hostTextField.getText());
                         dispose();
                     }
@@ -2,8 +2,10 @@ package suncertify.client;
 
 import javax.swing.table.AbstractTableModel;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import suncertify.db.Contractor;
+import suncertify.server.Page;
 
 /**
  * The custom table model used by the <code>GUI</code> class.
@@ -36,6 +38,12 @@ public class ContractorTableModel extends AbstractTableModel {
      */
     private List contractorRecords = new ArrayList();
 
+    /**
+     * The cursor of the next page of contractors to add to the table model,
+     * or null if every page has been added.
+     */
+    private String nextCursor;
+
 
     /**
      * Sets the value at a location in the table model.
@@ -138,4 +146,36 @@ public class ContractorTableModel extends AbstractTableModel {
         this.contractorRecords.add(temp);
 
     }
+
+
+    /**
+     * Adds the contractors on a page of a search to the table model, and
+     * notifies the listeners of the table model of the new rows.
+     *
+     *@param  page  the page of contractors to add.
+     */
+    public void addPage(Page page) {
+        int firstRow = this.contractorRecords.size();
+        Iterator it = page.getContractors().iterator();
+        while (it.hasNext()) {
+            addContractorRecord((Contractor) it.next());
+        }
+        this.nextCursor = page.getNextCursor();
+        int lastRow = this.contractorRecords.size() - 1;
+        if (lastRow >= firstRow) {
+            fireTableRowsInserted(firstRow, lastRow);
+        }
+    }
+
+
+    /**
+     * Gets the cursor of the next page of contractors to add to the table
+     * model.
+     *
+     *@return    the cursor of the next page, or null if every page has been
+     *      added.
+     */
+    public String getNextCursor() {
+        return this.nextCursor;
+    }
 }
@@ -11,6 +11,7 @@ import javax.swing.JMenu;
 import javax.swing.JLabel;
 import javax.swing.AbstractAction;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import java.awt.BorderLayout;
 import java.awt.FlowLayout;
 import java.awt.Dimension;
@@ -19,6 +20,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.ActionListener;
 import java.io.IOException;
+import suncertify.server.Page;
 import suncertify.server.Services;
 import suncertify.db.RecordNotFoundException;
 
@@ -44,7 +46,7 @@ public class GUI extends JFrame {
     /**
      *  The internal reference to the currently displayed contractor data.
      */
-    private ContractorTableModel tableData;
+    private volatile ContractorTableModel tableData;
 
     /**
      *  A reference to the controller with which the view communicates.
@@ -61,6 +63,11 @@ public class GUI extends JFrame {
      */
     private JTextField searchNameTextField = new JTextField(10);
 
+    /**
+     *  The text field containing the specialities search string.
+     */
+    private JTextField searchSpecialitiesTextField = new JTextField(10);
+
     /**
      *  The text field containing the CSR under which to book a specific
      *  contractor.
@@ -77,6 +84,11 @@ public class GUI extends JFrame {
      */
     private String previousLocationSearchString = "";
 
+    /**
+     *  The previous specialities search string.
+     */
+    private String previousSpecialitiesSearchString = "";
+
 
     /**
      *  Constructor for the main user interface window.
@@ -132,12 +144,19 @@ public class GUI extends JFrame {
         searchPanel.add(searchLocationLabel);
         searchPanel.add(searchLocationTextField);
 
+        JLabel searchSpecialitiesLabel = new JLabel("Specialities");
+        searchSpecialitiesTextField.setToolTipText(
+                "Enter the specialities, separated by commas, a contractor "
+                + "must offer here");
+        searchPanel.add(searchSpecialitiesLabel);
+        searchPanel.add(searchSpecialitiesTextField);
+
         /* The button used to start a search for a contractor. */
         JButton searchButton = new JButton("Search");
         searchButton.setMnemonic(KeyEvent.VK_S);
         searchButton.setToolTipText(
-                "Search contractors with supplied name and location "
-                + "parameters");
+                "Search contractors with supplied name, location and "
+                + "specialities parameters");
         searchButton.addActionListener(new SearchContractor());
         searchPanel.add(searchButton);
         JPanel bookPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -168,7 +187,7 @@ public class GUI extends JFrame {
 
         this.getContentPane().add(controlPanel, BorderLayout.SOUTH);
         this.pack();
-        this.setSize(600, 400);
+        this.setSize(700, 400);
         this.setTitle("Bodgitt and Scarper LLC. Contractor Booking System");
         Dimension d = Toolkit.getDefaultToolkit().getScreenSize();
         int x = (int) ((d.getWidth() - this.getWidth()) / 2);
@@ -194,6 +213,10 @@ public class GUI extends JFrame {
 
         /* Reset the table data. */
         this.mainTable.setModel(this.tableData);
+        if (this.tableData != null && this.tableData.getNextCursor() != null) {
+            /* Fetch the rest of the rows while the first page is shown. */
+            new Thread(new PageLoader(this.tableData)).start();
+        }
 
         /* Reselect the previous item if it still exists. */
         for (int i = 0; i < this.mainTable.getRowCount(); i++) {
@@ -224,6 +247,62 @@ public class GUI extends JFrame {
     }
 
 
+    /**
+     *  Fetches the pages of a table model after the first, adding each to
+     *  the table model on the event dispatch thread as it arrives. The
+     *  loader stops once the table model is no longer displayed.
+     *
+     *@author     Gregory Biegel
+     *@version    1.0
+     */
+    private class PageLoader implements Runnable {
+        /**
+         *  The table model the pages are added to.
+         */
+        private ContractorTableModel model;
+
+
+        /**
+         *  Constructor for the PageLoader object.
+         *
+         *@param  model  the table model the pages are added to.
+         */
+        PageLoader(ContractorTableModel model) {
+            this.model = model;
+        }
+
+
+        /**
+         *  Fetches the remaining pages of the table model.
+         */
+        public void run() {
+            String cursor = model.getNextCursor();
+            try {
+                while (cursor != null && model == tableData) {
+                    final Page page = controller.getNextPage(cursor);
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            model.addPage(page);
+                        }
+                    });
+                    cursor = page.getNextCursor();
+                }
+            } catch (IOException e) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        JOptionPane.showMessageDialog(GUI.this,
+                                new java.lang.Object[]{
+                                "Problem fetching contractors from server"
+                                },
+                                "Server error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
+                e.printStackTrace();
+            }
+        }
+    }
+
+
     /**
      *  This class represents the action taken when the search button is
      *  pressed.
@@ -242,11 +321,15 @@ public class GUI extends JFrame {
         public void actionPerformed(ActionEvent e) {
             previousNameSearchString = searchNameTextField.getText();
             previousLocationSearchString = searchLocationTextField.getText();
+            previousSpecialitiesSearchString =
+                    searchSpecialitiesTextField.getText();
             searchNameTextField.setText("");
             searchLocationTextField.setText("");
+            searchSpecialitiesTextField.setText("");
             try {
                 tableData = controller.find(previousNameSearchString,
-                        previousLocationSearchString);
+                        previousLocationSearchString,
+                        previousSpecialitiesSearchString);
             } catch (Exception ex) {
                 JOptionPane.showMessageDialog(GUI.this,
                         new java.lang.Object[]{
@@ -1,10 +1,7 @@
 package suncertify.client;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
 import java.io.IOException;
-import suncertify.db.Contractor;
+import suncertify.server.Page;
 import suncertify.server.Services;
 import suncertify.db.RecordNotFoundException;
 
@@ -22,6 +19,11 @@ public class GUIController {
      */
     private Services services;
 
+    /**
+     * The number of contractors fetched from the data store at a time.
+     */
+    public static final int PAGE_SIZE = 100;
+
 
     /**
      * Constructor for the controller object.
@@ -34,8 +36,10 @@ public class GUIController {
 
 
     /**
-     * Returns the list of contractors in the data store formatted as a
-     * <code>ContractorTableModel</code> .
+     * Returns the first page of the contractors in the data store formatted
+     * as a <code>ContractorTableModel</code> . The remaining pages are
+     * fetched with <code>getNextPage</code>, starting at the cursor of the
+     * table model.
      *
      *@return                  the contractor table model.
      *@exception  IOException  thrown if there is a problem
@@ -43,15 +47,7 @@ public class GUIController {
      */
     public ContractorTableModel getContractors() throws IOException {
         ContractorTableModel out = new ContractorTableModel();
-        List contractorArray = new ArrayList();
-        contractorArray = (ArrayList) services.getContractors();
-        Iterator it = contractorArray.iterator();
-        while (it.hasNext()) {
-            Contractor contractor = (Contractor) it.next();
-            if (!contractor.getDeleted()) {
-                out.addContractorRecord(contractor);
-            }
-        }
+        out.addPage(services.getContractorPage(PAGE_SIZE));
         return out;
     }
 
@@ -69,16 +65,52 @@ public class GUIController {
      */
     public ContractorTableModel find(String name,
             String location) throws IOException {
+        return find(name, location, "");
+    }
+
+
+    /**
+     * Searches for contractors that match the specified name and location
+     * criteria and offer each of a comma separated list of specialities,
+     * returning the first page of results formatted as a table model. The
+     * remaining pages are fetched with <code>getNextPage</code>, starting at
+     * the cursor of the table model.
+     *
+     *@param  name              the name search string.
+     *@param  location          the location search string.
+     *@param  specialities      the comma separated specialities to search
+     *      for, or an empty string to search by name and location only.
+     *@return                   the matching contractors formatted as a table
+     *      model.
+     *@exception  IOException   thrown if there is a problem
+     *      accessing the database file
+     */
+    public ContractorTableModel find(String name, String location,
+            String specialities) throws IOException {
         ContractorTableModel out = new ContractorTableModel();
-        List records = (ArrayList) services.find(name, location);
-        Iterator it = records.iterator();
-        while (it.hasNext()) {
-            out.addContractorRecord((Contractor) it.next());
+        String[] required = null;
+        if (specialities.trim().length() > 0) {
+            required = specialities.split(",");
         }
+        out.addPage(services.findPage(name, location, required, PAGE_SIZE));
         return out;
     }
 
 
+    /**
+     * Fetches the page of contractors which starts at a cursor.
+     *
+     *@param  cursor            the cursor of the page, as held by the table
+     *      model the page is to be added to.
+     *@return                   the page of contractors.
+     *@exception  IOException   thrown if the cursor has expired, or if there
+     *      is a problem accessing the database file
+     */
+    public Page getNextPage(String cursor) throws IOException {
+        return services.getNextPage(cursor, PAGE_SIZE);
+    }
+
+
     /**
      * Books a specific contractor in the database.
      *
@@ -1,9 +1,18 @@
 package suncertify.db;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 /**
  *  A contractor object represents a contractor object in the database file.
+ *  A contractor obtained from <code>Data</code> is a view of a record held
+ *  in the in-memory contractor table. When a field is first read, the view
+ *  takes a copy of the record, without locking, and decodes its fields from
+ *  that copy, so every field of the view comes from the same version of the
+ *  record and later changes to the record do not affect it. The fields are
+ *  decoded in full when the contractor is serialized, so a contractor sent
+ *  to a remote client is a detached copy.
  *
  *@author     Gregory Biegel
  *@version    1.0
@@ -56,6 +65,18 @@ public class Contractor implements Serializable {
      */
     private String owner;
 
+    /**
+     *  The table this contractor is a view of, or null if the contractor is
+     *  detached from the table.
+     */
+    private transient ContractorTable table;
+
+    /**
+     *  The copy of the record the fields of a view are decoded from, or null
+     *  until a field of the view is first read.
+     */
+    private transient byte[] record;
+
 
     /**
      *  Constructor for the contractor object.
@@ -89,7 +110,21 @@ public class Contractor implements Serializable {
 
 
     /**
-     *  Sets the owner of this contractor.
+     *  Constructor for a contractor which is a view of a record in the
+     *  contractor table.
+     *
+     *@param  table     the table holding the record.
+     *@param  recordNo  the contractor record number.
+     */
+    Contractor(ContractorTable table, long recordNo) {
+        this.table = table;
+        this.recordNo = recordNo;
+    }
+
+
+    /**
+     *  Sets the owner of this contractor. This has no effect on a view of the
+     *  contractor table.
      *
      *@param  newOwner  the new owner of this contractor.
      */
@@ -99,7 +134,8 @@ public class Contractor implements Serializable {
 
 
     /**
-     *  Sets the deleted flag of this contractor.
+     *  Sets the deleted flag of this contractor. This has no effect on a view
+     *  of the contractor table.
      *
      *@param  deleted  the new value of the deleted flag for this contractor.
      */
@@ -124,6 +160,9 @@ public class Contractor implements Serializable {
      *@return    the deleted flag.
      */
     public boolean getDeleted() {
+        if (table != null) {
+            return table.isDeleted(getRecord());
+        }
         return this.deleted;
     }
 
@@ -134,6 +173,9 @@ public class Contractor implements Serializable {
      *@return    the contractor name.
      */
     public String getName() {
+        if (table != null) {
+            return table.getField(getRecord(), ContractorTable.NAME);
+        }
         return this.name;
     }
 
@@ -144,6 +186,9 @@ public class Contractor implements Serializable {
      *@return    the contractor location.
      */
     public String getLocation() {
+        if (table != null) {
+            return table.getField(getRecord(), ContractorTable.LOCATION);
+        }
         return this.location;
     }
 
@@ -154,6 +199,9 @@ public class Contractor implements Serializable {
      *@return    the contractor specialities.
      */
     public String getSpecialities() {
+        if (table != null) {
+            return table.getField(getRecord(), ContractorTable.SPECIALITIES);
+        }
         return this.specialities;
     }
 
@@ -164,6 +212,9 @@ public class Contractor implements Serializable {
      *@return    the contractor size.
      */
     public int getSize() {
+        if (table != null) {
+            return table.getInt(getRecord(), ContractorTable.SIZE);
+        }
         return this.size;
     }
 
@@ -174,6 +225,9 @@ public class Contractor implements Serializable {
      *@return    the contractor rate.
      */
     public String getRate() {
+        if (table != null) {
+            return table.getField(getRecord(), ContractorTable.RATE);
+        }
         return this.rate;
     }
 
@@ -184,6 +238,9 @@ public class Contractor implements Serializable {
      *@return    the owner of this contractor.
      */
     public String getOwner() {
+        if (table != null) {
+            return table.getField(getRecord(), ContractorTable.OWNER);
+        }
         return this.owner;
     }
 
@@ -194,7 +251,43 @@ public class Contractor implements Serializable {
      *@return    a string representation of the contractor object.
      */
     public String toString() {
-        return name + location + specialities + size + rate + owner;
+        return getName() + getLocation() + getSpecialities() + getSize()
+                + getRate() + getOwner();
+    }
+
+
+    /**
+     *  Gets the copy of the record a view decodes its fields from, taking it
+     *  from the table the first time it is needed.
+     *
+     *@return    the record bytes.
+     */
+    private synchronized byte[] getRecord() {
+        if (record == null) {
+            record = table.getRecord((int) recordNo);
+        }
+        return record;
+    }
+
+
+    /**
+     *  Decodes the fields of a view from the contractor table before the
+     *  contractor is serialized.
+     *
+     *@param  out              the stream the contractor is written to.
+     *@throws  IOException     thrown if the contractor could not be written.
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        if (table != null) {
+            deleted = getDeleted();
+            name = getName();
+            location = getLocation();
+            specialities = getSpecialities();
+            size = getSize();
+            rate = getRate();
+            owner = getOwner();
+        }
+        out.defaultWriteObject();
     }
 
 }
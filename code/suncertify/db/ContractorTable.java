@@ -0,0 +1,658 @@
+package suncertify.db;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ *  The in-memory store of contractor records. Each record is held exactly as
+ *  it is laid out in the database file - the deleted flag followed by the
+ *  fixed width fields - in a single direct <code>ByteBuffer</code>, so that
+ *  no objects are held on the heap per record. <code>Contractor</code>
+ *  objects are created on request as views which decode their fields from
+ *  this table.
+ *  <p>
+ *  A view takes a copy of its record, a version of the record which no
+ *  later change affects, without locking. Records are spread over stripes,
+ *  each with a <code>StampedLock</code> which writers hold while they change
+ *  the bytes of a record. A copy is read optimistically, and is only taken
+ *  again, under the stripe's read lock, if a write to the stripe overlapped
+ *  it, so a view never combines the bytes of two versions of its record.
+ *  <p>
+ *  Fields are identified by the constants of this class, which are mapped to
+ *  the fields of the file schema by name, so the fields of the file may be
+ *  in any order and of any length.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class ContractorTable {
+
+    /**
+     *  Index of the name field.
+     */
+    static final int NAME = 0;
+
+    /**
+     *  Index of the location field.
+     */
+    static final int LOCATION = 1;
+
+    /**
+     *  Index of the specialities field.
+     */
+    static final int SPECIALITIES = 2;
+
+    /**
+     *  Index of the size field.
+     */
+    static final int SIZE = 3;
+
+    /**
+     *  Index of the rate field.
+     */
+    static final int RATE = 4;
+
+    /**
+     *  Index of the owner field.
+     */
+    static final int OWNER = 5;
+
+    /**
+     *  The schema names of the fields, indexed by the field constants.
+     */
+    private static final String[] FIELD_NAMES = {"name", "location",
+            "specialties", "size", "rate", "owner"};
+
+    /**
+     *  The value of the flag byte marking a record as deleted.
+     */
+    static final byte DELETED = (byte) '1';
+
+
+    /**
+     *  Maps each byte value to its lower case equivalent, for case
+     *  insensitive comparison of ASCII field bytes.
+     */
+    private static final byte[] LOWER = new byte[256];
+
+    /**
+     *  The number of bytes read from the file at a time by a bulk load.
+     */
+    private static final int CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     *  The number of stripes records are spread over for writing, a power of
+     *  two.
+     */
+    private static final int STRIPE_COUNT = 64;
+
+    /**
+     *  The number of times a copy of a record is read optimistically before
+     *  it is read under the read lock of its stripe.
+     */
+    private static final int OPTIMISTIC_READS = 4;
+
+    /**
+     *  The matcher comparing prefixes with the incubating Vector API, or
+     *  null if it cannot be loaded, in which case prefixes are compared a
+     *  byte at a time.
+     */
+    private static final PrefixMatcher MATCHER = loadMatcher();
+
+    static {
+        for (int i = 0; i < LOWER.length; i++) {
+            LOWER[i] = (byte) ((i >= 'A' && i <= 'Z') ? i + ('a' - 'A') : i);
+        }
+    }
+
+    /**
+     *  The buffer holding the records, one after another.
+     */
+    private volatile ByteBuffer records;
+
+    /**
+     *  The codec for the file schema.
+     */
+    private RecordCodec codec;
+
+    /**
+     *  The schema index of each field, indexed by the field constants.
+     */
+    private int[] columns;
+
+    /**
+     *  The offset of each field within a record, indexed by the field
+     *  constants.
+     */
+    private int[] fieldOffsets;
+
+    /**
+     *  The length of each field, indexed by the field constants.
+     */
+    private int[] fieldLengths;
+
+    /**
+     *  The length of a record, including its deleted flag.
+     */
+    private int recordSize;
+
+    /**
+     *  The number of records held in the table.
+     */
+    private volatile int count;
+
+    /**
+     *  The locks held while the records of each stripe are written.
+     */
+    private StampedLock[] stripes = new StampedLock[STRIPE_COUNT];
+
+
+    /**
+     *  Constructor for the ContractorTable object.
+     *
+     *@param  codec            the codec for the file schema.
+     *@param  capacity         the number of records to allocate space for.
+     *@throws  IOException     thrown if the schema is missing a contractor
+     *      field.
+     */
+    ContractorTable(RecordCodec codec, int capacity) throws IOException {
+        this.codec = codec;
+        this.recordSize = codec.getRecordSize();
+        this.columns = new int[FIELD_NAMES.length];
+        this.fieldOffsets = new int[FIELD_NAMES.length];
+        this.fieldLengths = new int[FIELD_NAMES.length];
+        for (int i = 0; i < FIELD_NAMES.length; i++) {
+            columns[i] = codec.indexOf(FIELD_NAMES[i]);
+            if (columns[i] < 0) {
+                throw new IOException("Database schema has no "
+                        + FIELD_NAMES[i] + " field");
+            }
+            fieldOffsets[i] = codec.getOffset(columns[i]);
+            fieldLengths[i] = codec.getLength(columns[i]);
+        }
+        this.records = ByteBuffer.allocateDirect(
+                Math.max(capacity, 1) * recordSize);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+
+    /**
+     *  Gets the number of records held in the table.
+     *
+     *@return    the number of records, including deleted records.
+     */
+    int size() {
+        return count;
+    }
+
+
+    /**
+     *  Appends a record to the table, growing the buffer if it is full.
+     *
+     *@param  record  the record bytes, starting with the deleted flag.
+     *@return         the number of the appended record.
+     */
+    synchronized int add(byte[] record) {
+        ensureCapacity(count + 1);
+        put(count, 0, record);
+        count++;
+        return count - 1;
+    }
+
+
+    /**
+     *  Appends records read directly from a file channel, reading the file in
+     *  large chunks.
+     *
+     *@param  channel          the channel to read from.
+     *@param  position         the file offset of the first record.
+     *@param  recordCount      the number of records to read.
+     *@throws  IOException     thrown if the records could not be read.
+     */
+    synchronized void load(FileChannel channel, long position, int recordCount)
+             throws IOException {
+        ensureCapacity(count + recordCount);
+        ByteBuffer target = records.duplicate();
+        int end = (count + recordCount) * recordSize;
+        target.position(count * recordSize);
+        while (target.position() < end) {
+            target.limit(Math.min(end, target.position() + CHUNK_SIZE));
+            while (target.hasRemaining()) {
+                int read = channel.read(target, position);
+                if (read < 0) {
+                    throw new EOFException("Database file is truncated");
+                }
+                position += read;
+            }
+        }
+        count += recordCount;
+    }
+
+
+    /**
+     *  Grows the buffer, if necessary, to hold the specified number of
+     *  records.
+     *
+     *@param  capacity  the number of records the buffer must hold.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity * recordSize > records.capacity()) {
+            ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(
+                    capacity * recordSize, records.capacity() * 2));
+            ByteBuffer old = records.duplicate();
+            old.position(0);
+            old.limit(count * recordSize);
+            grown.put(old);
+            records = grown;
+        }
+    }
+
+
+    /**
+     *  Writes bytes into a record.
+     *
+     *@param  recNo   the record to write to.
+     *@param  offset  the offset within the record.
+     *@param  bytes   the bytes to write.
+     */
+    void put(int recNo, int offset, byte[] bytes) {
+        StampedLock stripe = getStripe(recNo);
+        long stamp = stripe.writeLock();
+        try {
+            ByteBuffer buffer = records;
+            int base = recNo * recordSize + offset;
+            for (int i = 0; i < bytes.length; i++) {
+                buffer.put(base + i, bytes[i]);
+            }
+        } finally {
+            stripe.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     *  Reads bytes from a record.
+     *
+     *@param  recNo   the record to read from.
+     *@param  offset  the offset within the record.
+     *@param  bytes   the buffer to fill.
+     */
+    void get(int recNo, int offset, byte[] bytes) {
+        ByteBuffer buffer = records;
+        int base = recNo * recordSize + offset;
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(base + i);
+        }
+    }
+
+
+    /**
+     *  Gets whether a record is marked as deleted.
+     *
+     *@param  recNo  the record to check.
+     *@return        true if the record is deleted.
+     */
+    boolean isDeleted(int recNo) {
+        return records.get(recNo * recordSize) == DELETED;
+    }
+
+
+    /**
+     *  Gets the deleted flag byte of a record.
+     *
+     *@param  recNo  the record to read.
+     *@return        the flag byte.
+     */
+    byte getFlag(int recNo) {
+        return records.get(recNo * recordSize);
+    }
+
+
+    /**
+     *  Sets the deleted flag byte of a record.
+     *
+     *@param  recNo  the record to update.
+     *@param  flag   the new flag byte.
+     */
+    void setFlag(int recNo, byte flag) {
+        StampedLock stripe = getStripe(recNo);
+        long stamp = stripe.writeLock();
+        try {
+            records.put(recNo * recordSize, flag);
+        } finally {
+            stripe.unlockWrite(stamp);
+        }
+    }
+
+
+    /**
+     *  Takes a copy of a record, consistent with a single version of the
+     *  record, reading it optimistically without locking.
+     *
+     *@param  recNo  the record to copy.
+     *@return        the record bytes, starting with the deleted flag.
+     */
+    byte[] getRecord(int recNo) {
+        StampedLock stripe = getStripe(recNo);
+        byte[] record = new byte[recordSize];
+        for (int i = 0; i < OPTIMISTIC_READS; i++) {
+            long stamp = stripe.tryOptimisticRead();
+            if (stamp != 0) {
+                get(recNo, 0, record);
+                if (stripe.validate(stamp)) {
+                    return record;
+                }
+            }
+        }
+        /* Writes kept overlapping the copy; wait for them to finish. */
+        long stamp = stripe.readLock();
+        try {
+            get(recNo, 0, record);
+        } finally {
+            stripe.unlockRead(stamp);
+        }
+        return record;
+    }
+
+
+    /**
+     *  Gets whether a copy of a record is marked as deleted.
+     *
+     *@param  record  the record bytes, from <code>getRecord</code>.
+     *@return         true if the record is deleted.
+     */
+    boolean isDeleted(byte[] record) {
+        return record[0] == DELETED;
+    }
+
+
+    /**
+     *  Decodes a field of a copy of a record, with its padding.
+     *
+     *@param  record  the record bytes, from <code>getRecord</code>.
+     *@param  field   the index of the field to decode.
+     *@return         the field value.
+     */
+    String getField(byte[] record, int field) {
+        return codec.decodeField(ByteBuffer.wrap(record), 0, columns[field]);
+    }
+
+
+    /**
+     *  Parses a numeric field of a copy of a record.
+     *
+     *@param  record                   the record bytes, from
+     *      <code>getRecord</code>.
+     *@param  field                    the index of the field to parse.
+     *@return                          the field value.
+     *@throws  NumberFormatException   thrown if the field is not a number.
+     */
+    int getInt(byte[] record, int field) {
+        return codec.decodeInt(ByteBuffer.wrap(record), 0, columns[field]);
+    }
+
+
+    /**
+     *  Gets the lock held while the records of a stripe are written.
+     *
+     *@param  recNo  the record.
+     *@return        the lock of the record's stripe.
+     */
+    private StampedLock getStripe(int recNo) {
+        return stripes[recNo & (STRIPE_COUNT - 1)];
+    }
+
+
+    /**
+     *  Decodes a field of a record, with its padding.
+     *
+     *@param  recNo  the record to read.
+     *@param  field  the index of the field to decode.
+     *@return        the field value.
+     */
+    String getField(int recNo, int field) {
+        return codec.decodeField(records, recNo * recordSize, columns[field]);
+    }
+
+
+    /**
+     *  Parses a numeric field of a record without decoding it to a
+     *  <code>String</code>. Leading and trailing spaces are ignored.
+     *
+     *@param  recNo                    the record to read.
+     *@param  field                    the index of the field to parse.
+     *@return                          the field value.
+     *@throws  NumberFormatException   thrown if the field is not a number.
+     */
+    int getInt(int recNo, int field) {
+        return codec.decodeInt(records, recNo * recordSize, columns[field]);
+    }
+
+
+    /**
+     *  Gets the numeric value of a field, by which records are compared in
+     *  range searches. The rate is parsed into a whole number of cents, and
+     *  other fields are parsed as integers.
+     *
+     *@param  recNo                    the record to read.
+     *@param  field                    the index of the field to parse.
+     *@return                          the numeric value of the field.
+     *@throws  NumberFormatException   thrown if the field is not a number.
+     */
+    int getNumber(int recNo, int field) {
+        if (field == RATE) {
+            return codec.decodeCents(records, recNo * recordSize,
+                    columns[field]);
+        }
+        return getInt(recNo, field);
+    }
+
+
+    /**
+     *  Gets the schema index of a field.
+     *
+     *@param  field  the index of the field.
+     *@return        the index of the field in the file schema.
+     */
+    int getColumn(int field) {
+        return columns[field];
+    }
+
+
+    /**
+     *  Gets the offset of a field within a record.
+     *
+     *@param  field  the index of the field.
+     *@return        the offset of the field, after the deleted flag.
+     */
+    int getFieldOffset(int field) {
+        return fieldOffsets[field];
+    }
+
+
+    /**
+     *  Gets the length of a field.
+     *
+     *@param  field  the index of the field.
+     *@return        the length of the field.
+     */
+    int getFieldLength(int field) {
+        return fieldLengths[field];
+    }
+
+
+    /**
+     *  Tests whether a field of a record begins with a prefix, ignoring
+     *  case. The comparison is made directly on the field bytes, so no
+     *  objects are created.
+     *
+     *@param  recNo   the record to test.
+     *@param  field   the index of the field.
+     *@param  prefix  the prefix, normalized by <code>toPrefix</code>.
+     *@return         true if the field begins with the prefix.
+     */
+    boolean startsWith(int recNo, int field, byte[] prefix) {
+        if (prefix.length > fieldLengths[field]) {
+            return false;
+        }
+        ByteBuffer buffer = records;
+        int start = recNo * recordSize + fieldOffsets[field];
+        if (MATCHER != null) {
+            return MATCHER.startsWith(buffer, start, prefix);
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (LOWER[buffer.get(start + i) & 0xff] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Tests whether a field of a record equals a value, ignoring case and
+     *  the padding of the field.
+     *
+     *@param  recNo  the record to test.
+     *@param  field  the index of the field.
+     *@param  value  the value, normalized by <code>toPrefix</code>.
+     *@return        true if the field holds the value.
+     */
+    boolean matchesExactly(int recNo, int field, byte[] value) {
+        if (!startsWith(recNo, field, value)) {
+            return false;
+        }
+        ByteBuffer buffer = records;
+        int start = recNo * recordSize + fieldOffsets[field];
+        for (int i = value.length; i < fieldLengths[field]; i++) {
+            if (buffer.get(start + i) != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Tests whether a field of a record holds only spaces.
+     *
+     *@param  recNo  the record to test.
+     *@param  field  the index of the field.
+     *@return        true if the field is blank.
+     */
+    boolean isBlank(int recNo, int field) {
+        ByteBuffer buffer = records;
+        int start = recNo * recordSize + fieldOffsets[field];
+        for (int i = 0; i < fieldLengths[field]; i++) {
+            if (buffer.get(start + i) != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Gets a byte of a field, converted to lower case.
+     *
+     *@param  recNo     the record to read.
+     *@param  field     the index of the field.
+     *@param  position  the position of the byte within the field.
+     *@return           the lower case byte, as an unsigned value.
+     */
+    int getLowerByte(int recNo, int field, int position) {
+        return LOWER[records.get(recNo * recordSize + fieldOffsets[field]
+                + position) & 0xff] & 0xff;
+    }
+
+
+    /**
+     *  Decodes a field of a record converted to lower case, with its
+     *  padding. Values compare in the same order as their lower case bytes.
+     *
+     *@param  recNo  the record to read.
+     *@param  field  the index of the field.
+     *@return        the lower case field value.
+     */
+    String getLowerField(int recNo, int field) {
+        ByteBuffer buffer = records;
+        int start = recNo * recordSize + fieldOffsets[field];
+        char[] chars = new char[fieldLengths[field]];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (LOWER[buffer.get(start + i) & 0xff] & 0xff);
+        }
+        return new String(chars);
+    }
+
+
+    /**
+     *  Normalizes a search value for comparison by <code>startsWith</code>.
+     *  The value is matched literally; no characters have special meaning.
+     *  Fields hold single byte characters, so a value with a character above
+     *  <code>0xFF</code> matches no record.
+     *
+     *@param  value  the value to normalize.
+     *@return        the lower case bytes of the value, or null if no field
+     *      can begin with it.
+     */
+    static byte[] toPrefix(String value) {
+        byte[] prefix = new byte[value.length()];
+        for (int i = 0; i < prefix.length; i++) {
+            char c = value.charAt(i);
+            if (c > 0xff) {
+                return null;
+            }
+            prefix[i] = LOWER[c];
+        }
+        return prefix;
+    }
+
+
+    /**
+     *  Loads the matcher which compares prefixes with the incubating Vector
+     *  API. It is only found if it was built, and only loads if the
+     *  <code>jdk.incubator.vector</code> module is present.
+     *
+     *@return    the matcher, or null if it cannot be loaded.
+     */
+    private static PrefixMatcher loadMatcher() {
+        try {
+            return (PrefixMatcher) Class.forName(
+                    "suncertify.db.VectorPrefixMatcher").newInstance();
+        } catch (Exception e) {
+            return null;
+        } catch (LinkageError e) {
+            /* The class was built, but the module is not present. */
+            return null;
+        }
+    }
+
+
+    /**
+     *  Encodes a field value, padded to the length of the field.
+     *
+     *@param  field  the index of the field.
+     *@param  value  the value to encode.
+     *@return        the field bytes.
+     */
+    byte[] encodeField(int field, String value) {
+        return codec.encodeField(columns[field], value);
+    }
+
+
+    /**
+     *  Gets a <code>Contractor</code> view of a record. The view decodes its
+     *  fields from a copy of the record, taken when a field is first read.
+     *
+     *@param  recNo  the record to view.
+     *@return        the contractor view.
+     */
+    Contractor getContractor(int recNo) {
+        return new Contractor(this, recNo);
+    }
+}
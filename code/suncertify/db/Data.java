@@ -2,13 +2,20 @@ package suncertify.db;
 
 import java.io.RandomAccessFile;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
 import java.util.HashMap;
-import java.util.regex.Pattern;
-import java.util.regex.Matcher;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  *  An implementation of the <code>DBAccess</code> interface providing access
@@ -52,24 +59,70 @@ public final class Data implements DBAccess {
     private int[] fieldLengths;
 
     /**
-     *  A byte array containing a record read from the file.
+     *  The codec for records laid out according to the file schema.
      */
-    private byte[] record;
+    private RecordCodec codec;
 
     /**
-     *  A list of <code>Contractor</code> objects.
+     *  The in-memory table of contractor records.
      */
-    private List contractors = new ArrayList();
+    private ContractorTable table;
 
     /**
-     *  A map of contractors that have been locked for access.
+     *  The index of live records by name.
      */
-    private Map lockedContractors = new HashMap();
+    private PrefixIndex nameIndex;
 
     /**
-     *  The current record being processed.
+     *  The index of live records by location.
      */
-    private long recordNo = 0;
+    private PrefixIndex locationIndex;
+
+    /**
+     *  The inverted index of live records by speciality.
+     */
+    private TokenIndex specialityIndex;
+
+    /**
+     *  The index of live records by size.
+     */
+    private RangeIndex sizeIndex;
+
+    /**
+     *  The index of live records by rate, in cents.
+     */
+    private RangeIndex rateIndex;
+
+    /**
+     *  The index of booked live records by owner.
+     */
+    private TokenIndex ownerIndex;
+
+    /**
+     *  The bitmap of live records.
+     */
+    private RecordBitmap liveRecords;
+
+    /**
+     *  The bitmap of booked live records.
+     */
+    private RecordBitmap bookedRecords;
+
+    /**
+     *  The compiled plan of each shape of query run, keyed by shape.
+     */
+    private Map plans = new HashMap();
+
+    /**
+     *  The record numbers of deleted records, available for reuse by
+     *  <code>createRecord</code>.
+     */
+    private LinkedList freeRecords = new LinkedList();
+
+    /**
+     *  The locks of the records locked for access.
+     */
+    private LockManager locks = new LockManager(DEFAULT_LOCK_LEASE);
 
     /**
      *  The length in bytes of the file header information.
@@ -81,6 +134,62 @@ public final class Data implements DBAccess {
      */
     private String databaseFilePath;
 
+    /**
+     *  The storage through which records are written to the database file.
+     */
+    private RecordStorage storage;
+
+    /**
+     *  The log to which changes are written before they are applied to the
+     *  database file.
+     */
+    private WriteAheadLog log;
+
+    /**
+     *  The number of logged changes not yet applied to the database file.
+     */
+    private int pendingWrites = 0;
+
+    /**
+     *  Set if a logged change could not be applied to the database file, in
+     *  which case the log must be kept until it is replayed at startup.
+     */
+    private boolean checkpointBlocked = false;
+
+    /**
+     *  The version of the data, incremented under the monitor of the table
+     *  each time a record is changed.
+     */
+    private volatile long version = 0;
+
+    /**
+     *  The version stamp of each record, incremented under the monitor of
+     *  the table each time the record is changed. The array is replaced by
+     *  a larger copy when records are appended.
+     */
+    private volatile long[] recordVersions = new long[0];
+
+    /**
+     *  The version stamp of the last change of each record's owner field
+     *  written to the database file. A logged change is only written if it
+     *  is newer, so a change applied late cannot overwrite a later one.
+     *  Guarded by the monitor of the table, and grown with the stamps.
+     */
+    private long[] ownerWrites = new long[0];
+
+    /**
+     *  The version stamp of the last change of each record's deleted flag
+     *  written to the database file. Guarded by the monitor of the table,
+     *  and grown with the stamps.
+     */
+    private long[] flagWrites = new long[0];
+
+    /**
+     *  The number of records at or above which a scan is run in parallel.
+     */
+    private volatile int parallelScanThreshold =
+            DEFAULT_PARALLEL_SCAN_THRESHOLD;
+
     /**
      *  The single instance of this class.
      */
@@ -91,24 +200,97 @@ public final class Data implements DBAccess {
      */
     private static final int MAGIC_COOKIE = 513;
 
+    /**
+     *  Storage mode in which the database file is opened for each update.
+     */
+    public static final String STORAGE_FILE = "file";
+
+    /**
+     *  Storage mode in which the database file is memory mapped once and
+     *  updated in place.
+     */
+    public static final String STORAGE_MAPPED = "mapped";
+
+    /**
+     *  The suffix appended to the database file path to name its log file.
+     */
+    private static final String LOG_SUFFIX = ".wal";
+
+    /**
+     *  The size in bytes the log may reach before it is checkpointed.
+     */
+    private static final long CHECKPOINT_SIZE = 1024 * 1024;
+
+    /**
+     *  The number of records checked by a single task when loading the file.
+     */
+    private static final int LOAD_TASK_SIZE = 4096;
+
+    /**
+     *  The number of records checked by a single task in a parallel scan.
+     */
+    private static final int SCAN_TASK_SIZE = 16384;
+
+    /**
+     *  The default number of records above which a scan is run in parallel.
+     */
+    public static final int DEFAULT_PARALLEL_SCAN_THRESHOLD = 65536;
+
+    /**
+     *  The longest time in milliseconds to wait at shutdown for logged
+     *  changes to be applied to the database file.
+     */
+    private static final long CLOSE_TIMEOUT = 5000;
+
+    /**
+     *  The default time in milliseconds for which a record lock is leased.
+     */
+    public static final long DEFAULT_LOCK_LEASE = 10000;
+
+    /**
+     *  The pool on which work over ranges of records is run in parallel.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool();
+
 
     /**
      *  Private constructor to enforce singleton.
      *
-     *@param  filePath  the path of the database file.
+     *@param  filePath     the path of the database file.
+     *@param  storageMode  the storage mode used to update the file, one of
+     *      <code>STORAGE_FILE</code> or <code>STORAGE_MAPPED</code>.
      */
-    private Data(String filePath) {
+    private Data(String filePath, String storageMode) {
         this.databaseFilePath = filePath;
+        try {
+            this.log = new WriteAheadLog(databaseFilePath + LOG_SUFFIX);
+        } catch (IOException ioe) {
+            System.err.println("Error opening the database log file");
+            System.exit(1);
+        }
         this.readFile(databaseFilePath);
+        this.storage = openStorage(databaseFilePath, storageMode);
+        /* Close the file and the log however the server is stopped. */
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                close();
+            }
+        });
     }
 
 
     /**
-     *  Get the in-memory cache list of contractors.
+     *  Get a list of the contractors in the in-memory table. Each contractor
+     *  is a view which decodes its fields from the table when they are read.
      *
      *@return    The list of contractor objects.
      */
     public List getContractorList() {
+        int size = table.size();
+        List contractors = new ArrayList(size);
+        for (int i = 0; i < size; i++) {
+            contractors.add(table.getContractor(i));
+        }
         return contractors;
     }
 
@@ -126,10 +308,10 @@ public final class Data implements DBAccess {
         String[] readRecord = new String[7];
         /* Read it from the contractor list and insert into array. */
         int contractorRecord = (int)recNo;
-        if (contractorRecord > contractors.size() || contractorRecord < 0) {
+        if (contractorRecord >= table.size() || contractorRecord < 0) {
             throw new RecordNotFoundException("Could not find the contractor");
         }
-        Contractor c = (Contractor)contractors.get((int)recNo);
+        Contractor c = table.getContractor(contractorRecord);
         readRecord[0] = c.getName();
         readRecord[1] = c.getLocation();
         readRecord[2] = c.getOwner();
@@ -159,27 +341,10 @@ public final class Data implements DBAccess {
      */
     public void updateRecord(long recNo, String[] data, long lockCookie)
              throws RecordNotFoundException, SecurityException {
-        long cookie = ((Long)lockedContractors.get(
-                new Long(recNo))).longValue();
         /* Ensure this record has been locked by the client. */
-        if (cookie == lockCookie) {
-            synchronized(contractors) {
-                Contractor contractor = (Contractor)contractors.get((int)recNo);
-                String previousOwner = contractor.getOwner();
-                contractor.setOwner(data[0]);
-                try {
-                    dataFile = new RandomAccessFile(databaseFilePath, "rw");
-                    dataFile.seek((schemaLength
-                           + ((recNo) * (recordLength + 1)))
-                            + (recordLength - 7));
-                    dataFile.write(data[0].getBytes());
-                    dataFile.close();
-                } catch (Exception e) {
-                    contractor.setOwner(previousOwner);
-                    throw new RecordNotFoundException(
-                            "Could not find the record");
-                }
-             }
+        if (locks.isLockedWith(recNo, lockCookie)) {
+            writeOwner(recNo, table.encodeField(ContractorTable.OWNER,
+                    data[0]), -1);
         } else {
             throw new SecurityException(
                     "Attempted to update record with wrong cookie");
@@ -187,6 +352,296 @@ public final class Data implements DBAccess {
     }
 
 
+    /**
+     *  Books a record for an owner if it is not booked, is not deleted, and
+     *  has not changed since its version stamp was read, as one atomic step.
+     *  No lock is taken on the record, so a booking costs a single
+     *  acquisition of the table monitor, but a record locked through
+     *  <code>lockRecord</code> is left to the holder of the lock. Concurrent
+     *  bookings of a record are linearizable: exactly one of them succeeds.
+     *
+     *@param  recNo                      the identifier of the record to book.
+     *@param  owner                      the owner to book the record for.
+     *@param  recordVersion              the version stamp of the record, as
+     *      read by <code>getRecordVersion</code>.
+     *@return                            true if the record was booked, false
+     *      if it is booked, is deleted, is locked, or has changed since the
+     *      stamp.
+     *@throws  RecordNotFoundException   thrown if the record is not found,
+     *      or the booking could not be written.
+     *@throws  IllegalArgumentException  thrown if the owner is blank.
+     */
+    public boolean bookRecord(long recNo, String owner, long recordVersion)
+             throws RecordNotFoundException {
+        checkRecordNumber(recNo);
+        if (owner.trim().length() == 0) {
+            throw new IllegalArgumentException("Cannot book for a blank "
+                    + "owner");
+        }
+        if (recordVersion < 0) {
+            return false;
+        }
+        return writeOwner(recNo, table.encodeField(ContractorTable.OWNER,
+                owner), recordVersion);
+    }
+
+
+    /**
+     *  Unbooks a record if it is booked, is not deleted, and has not changed
+     *  since its version stamp was read, as one atomic step, in the same way
+     *  as <code>bookRecord</code>. Concurrent unbookings of a record are
+     *  linearizable: exactly one of them succeeds.
+     *
+     *@param  recNo                     the identifier of the record to
+     *      unbook.
+     *@param  recordVersion             the version stamp of the record, as
+     *      read by <code>getRecordVersion</code>.
+     *@return                           true if the record was unbooked,
+     *      false if it is not booked, is deleted, is locked, or has changed
+     *      since the stamp.
+     *@throws  RecordNotFoundException  thrown if the record is not found, or
+     *      the unbooking could not be written.
+     */
+    public boolean unbookRecord(long recNo, long recordVersion)
+             throws RecordNotFoundException {
+        checkRecordNumber(recNo);
+        if (recordVersion < 0) {
+            return false;
+        }
+        return writeOwner(recNo, table.encodeField(ContractorTable.OWNER,
+                ""), recordVersion);
+    }
+
+
+    /**
+     *  Books several records for an owner as one atomic change: either every
+     *  record is booked, or, if any of them is booked or deleted, none is.
+     *  The records are locked in ascending order of record number, so two
+     *  batches sharing records can never each hold a record the other is
+     *  waiting for, and the change is written to the log as a single entry,
+     *  so a crash cannot leave part of the batch booked.
+     *
+     *@param  recNos                     the identifiers of the records to
+     *      book.
+     *@param  owner                      the owner to book the records for.
+     *@param  timeout                    the longest time in milliseconds to
+     *      wait for the records to be unlocked by other users.
+     *@return                            true if the records were booked,
+     *      false if any of them is booked.
+     *@throws  RecordNotFoundException   thrown if a record is not found or
+     *      is deleted, or the booking could not be written.
+     *@throws  SecurityException         thrown if a record is still locked
+     *      after the timeout.
+     *@throws  InterruptedException      thrown if the thread is interrupted
+     *      while waiting for a lock.
+     *@throws  IllegalArgumentException  thrown if the owner is blank.
+     */
+    public boolean bookRecords(long[] recNos, String owner, long timeout)
+             throws RecordNotFoundException, InterruptedException {
+        if (owner.trim().length() == 0) {
+            throw new IllegalArgumentException("Cannot book for a blank "
+                    + "owner");
+        }
+        long[] sorted = recNos.clone();
+        Arrays.sort(sorted);
+        int count = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            checkRecordNumber(sorted[i]);
+            if (count == 0 || sorted[i] != sorted[count - 1]) {
+                sorted[count++] = sorted[i];
+            }
+        }
+        if (count == 0) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        long deadline = timeout > Long.MAX_VALUE - now ? Long.MAX_VALUE
+                : now + Math.max(timeout, 0);
+        long[] cookies = new long[count];
+        int locked = 0;
+        try {
+            for (; locked < count; locked++) {
+                cookies[locked] = locks.lock(sorted[locked], Math.max(
+                        deadline - System.currentTimeMillis(), 0));
+                if (cookies[locked] < 0) {
+                    throw new SecurityException("Contractor record "
+                            + sorted[locked] + " is locked by another user");
+                }
+            }
+            long[] batch = new long[count];
+            System.arraycopy(sorted, 0, batch, 0, count);
+            return writeOwners(batch, table.encodeField(ContractorTable.OWNER,
+                    owner));
+        } finally {
+            for (int i = 0; i < locked; i++) {
+                try {
+                    locks.unlock(sorted[i], cookies[i]);
+                } catch (SecurityException e) {
+                    /* The lease expired and the record was reclaimed. */
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Writes a new owner into several unbooked records as one logged
+     *  change, and applies it to the database file.
+     *
+     *@param  recNos                    the identifiers of the records, in
+     *      ascending order.
+     *@param  owner                     the padded owner field.
+     *@return                           true if the owner was written, false
+     *      if any of the records is booked.
+     *@throws  RecordNotFoundException  thrown if a record is deleted, or the
+     *      change could not be logged.
+     */
+    private boolean writeOwners(long[] recNos, byte[] owner)
+             throws RecordNotFoundException {
+        ByteBuffer entry = ByteBuffer.allocate(recNos.length
+                * (8 + owner.length));
+        for (int i = 0; i < recNos.length; i++) {
+            entry.putLong(recNos[i]);
+            entry.put(owner);
+        }
+        byte[] blank = new byte[owner.length];
+        Arrays.fill(blank, (byte) ' ');
+        long[] stamps = new long[recNos.length];
+        long logPosition;
+        synchronized(table) {
+            for (int i = 0; i < recNos.length; i++) {
+                if (table.isDeleted((int) recNos[i])) {
+                    throw new RecordNotFoundException("This contractor has "
+                            + "been deleted");
+                }
+            }
+            for (int i = 0; i < recNos.length; i++) {
+                if (!table.isBlank((int) recNos[i], ContractorTable.OWNER)) {
+                    return false;
+                }
+            }
+            try {
+                logPosition = log.append(WriteAheadLog.OP_BATCH_UPDATE,
+                        recNos.length, entry.array());
+            } catch (IOException e) {
+                throw new RecordNotFoundException(
+                        "Could not log the update : " + e.getMessage());
+            }
+            for (int i = 0; i < recNos.length; i++) {
+                setOwner((int) recNos[i], owner);
+                stamps[i] = stamp((int) recNos[i]);
+            }
+            version++;
+            pendingWrites += recNos.length;
+        }
+        /* Wait for the log to reach the disk along with other writers. */
+        try {
+            log.sync(logPosition);
+        } catch (IOException e) {
+            synchronized(table) {
+                /* Leave any record changed since to its later owner. */
+                for (int i = 0; i < recNos.length; i++) {
+                    if (recordVersions[(int) recNos[i]] == stamps[i]) {
+                        setOwner((int) recNos[i], blank);
+                        stamp((int) recNos[i]);
+                    }
+                }
+                version++;
+            }
+            abortLoggedWrite(logPosition, recNos.length);
+            throw new RecordNotFoundException(
+                    "Could not log the update : " + e.getMessage());
+        }
+        for (int i = 0; i < recNos.length; i++) {
+            applyLoggedWrite((int) recNos[i], false, stamps[i], owner);
+        }
+        return true;
+    }
+
+
+    /**
+     *  Gets the version stamp of a record, which changes whenever the record
+     *  is updated, deleted or created. The stamp is read without locking, so
+     *  it may be out of date, in which case a booking made with it fails and
+     *  may be retried with a new stamp.
+     *
+     *@param  recNo                     the identifier of the record.
+     *@return                           the version stamp of the record.
+     *@throws  RecordNotFoundException  thrown if the record is not found.
+     */
+    public long getRecordVersion(long recNo) throws RecordNotFoundException {
+        checkRecordNumber(recNo);
+        long[] current = recordVersions;
+        /* A record being appended has no stamp until it is complete. */
+        return recNo < current.length ? current[(int) recNo] : 0;
+    }
+
+
+    /**
+     *  Writes a new owner into a record, logging the change and applying it
+     *  to the database file.
+     *
+     *@param  recNo                     the identifier of the record.
+     *@param  owner                     the padded owner field.
+     *@param  recordVersion             the version stamp the record must
+     *      have, unlocked, not deleted and booked only if the new owner is
+     *      blank, for the owner to be written, or -1 to write the owner
+     *      unconditionally.
+     *@return                           true if the owner was written.
+     *@throws  RecordNotFoundException  thrown if the change could not be
+     *      logged.
+     */
+    private boolean writeOwner(long recNo, byte[] owner, long recordVersion)
+             throws RecordNotFoundException {
+        int ownerOffset = table.getFieldOffset(ContractorTable.OWNER);
+        byte[] previousOwner = new byte[owner.length];
+        long recordStamp;
+        long logPosition;
+        synchronized(table) {
+            /*
+             * A record locked through the locking API belongs to its holder,
+             * who may update the owner without a stamp on what it read.
+             */
+            if (recordVersion >= 0 && (recordVersions[(int) recNo]
+                    != recordVersion || table.isDeleted((int) recNo)
+                    || table.isBlank((int) recNo, ContractorTable.OWNER)
+                    == isBlank(owner) || locks.isLocked(recNo))) {
+                return false;
+            }
+            table.get((int) recNo, ownerOffset, previousOwner);
+            try {
+                logPosition = log.append(WriteAheadLog.OP_UPDATE, recNo,
+                        owner);
+            } catch (IOException e) {
+                throw new RecordNotFoundException(
+                        "Could not log the update : " + e.getMessage());
+            }
+            setOwner((int) recNo, owner);
+            recordStamp = stamp((int) recNo);
+            version++;
+            pendingWrites++;
+        }
+        /* Wait for the log to reach the disk along with other writers. */
+        try {
+            log.sync(logPosition);
+        } catch (IOException e) {
+            synchronized(table) {
+                /* Leave a record changed since to its later owner. */
+                if (recordVersions[(int) recNo] == recordStamp) {
+                    setOwner((int) recNo, previousOwner);
+                    stamp((int) recNo);
+                    version++;
+                }
+            }
+            abortLoggedWrite(logPosition, 1);
+            throw new RecordNotFoundException(
+                    "Could not log the update : " + e.getMessage());
+        }
+        applyLoggedWrite((int) recNo, false, recordStamp, owner);
+        return true;
+    }
+
+
     /**
      *  Deletes a record, making the record number and associated disk storage
      *  available for reuse.
@@ -196,27 +651,60 @@ public final class Data implements DBAccess {
      *@throws SecurityException    if the record is locked with a cookie 
      *      other than lockCookie.
      *@throws RecordNotFoundException   if the record is not found in the 
-     *      database.  
+     *      database, or has already been deleted.
      */
     public void deleteRecord(long recNo, long lockCookie)
              throws RecordNotFoundException, SecurityException {
-        long cookie = ((Long) lockedContractors.get(
-                new Long(recNo))).longValue();
         /* Ensure this record has been locked by the client. */
-        if (cookie == lockCookie) {
-            synchronized(contractors) {
-                Contractor contractor = (Contractor)contractors.get((int)recNo);
-                contractor.setDeleted(true);
+        if (locks.isLockedWith(recNo, lockCookie)) {
+            byte previousFlag;
+            long recordStamp;
+            long logPosition;
+            synchronized(table) {
+                /* A second delete would put the slot on the free list twice. */
+                if (table.isDeleted((int) recNo)) {
+                    throw new RecordNotFoundException("This contractor has "
+                            + "been deleted");
+                }
+                previousFlag = table.getFlag((int) recNo);
                 try {
-                    dataFile = new RandomAccessFile(databaseFilePath, "rw");
-                    dataFile.seek((schemaLength
-                            + ((recNo) * (recordLength + 1))));
-                    dataFile.write("1".getBytes());
-                    dataFile.close();
+                    logPosition = log.append(WriteAheadLog.OP_DELETE, recNo,
+                            "1".getBytes());
                 } catch (IOException e) {
                     throw new RecordNotFoundException(
-                            "Error updating database file : " +e.getMessage());
+                            "Error logging the deletion : " + e.getMessage());
                 }
+                table.setFlag((int) recNo, ContractorTable.DELETED);
+                unindexRecord((int) recNo);
+                recordStamp = stamp((int) recNo);
+                version++;
+                pendingWrites++;
+            }
+            /* Wait for the log to reach the disk along with other writers. */
+            try {
+                log.sync(logPosition);
+            } catch (IOException e) {
+                synchronized(table) {
+                    if (recordVersions[(int) recNo] == recordStamp) {
+                        table.setFlag((int) recNo, previousFlag);
+                        if (!table.isDeleted((int) recNo)) {
+                            indexRecord((int) recNo);
+                        }
+                        stamp((int) recNo);
+                        version++;
+                    }
+                }
+                abortLoggedWrite(logPosition, 1);
+                throw new RecordNotFoundException(
+                        "Error logging the deletion : " + e.getMessage());
+            }
+            applyLoggedWrite((int) recNo, true, recordStamp, "1".getBytes());
+            /* 
+             * The slot is only offered for reuse once the deleted flag has
+             * been written, so it cannot overwrite a newly created record.
+             */
+            synchronized(table) {
+                freeRecords.addLast(Long.valueOf(recNo));
             }
         } else {
             throw new SecurityException(
@@ -231,200 +719,1379 @@ public final class Data implements DBAccess {
      *  Field n in the database file is described by criteria[n]. A null value
      *  in criteria[n] matches any field value. A non-null value in
      *  criteria[n] matches any field value that begins with criteria[n]. (For
-     *  example, "Fred" matches "Fred" or "Freddy".)
+     *  example, "Fred" matches "Fred" or "Freddy".) Matching ignores case,
+     *  and criteria are matched literally, so characters such as "(" have no
+     *  special meaning. Deleted records never match.
      *
      *@param  criteria  the array of criteria to search by.
      *@return           an array of record numbers that match the specified
      *      criteria.
      */
     public long[] findByCriteria(String[] criteria) {
-        long[] results;
-        ArrayList values = new ArrayList();
-        Pattern namePattern = null;
-        Pattern locationPattern = null;
-        /** 
-         * Compile the regular expression - the term must occur at 
-         *  the start of the line. 
-         */
-        namePattern = Pattern.compile("^" + criteria[1]);
-        locationPattern = Pattern.compile("^" + criteria[2]);
+        Query query = new Query();
+        for (int field = 0; field < Query.FIELD_COUNT; field++) {
+            int column = table.getColumn(field);
+            if (column < criteria.length) {
+                query.setPrefix(field, criteria[column]);
+            }
+        }
+        return find(query);
+    }
 
-        Iterator it = contractors.iterator();
-        Contractor contractor = null;
-        String contractorName = null;
-        String contractorLocation = null;
 
-        /* Iterate though each Contractor in the system and look for matches. */
-        while (it.hasNext()) {
-            contractor = (Contractor) it.next();
-            contractorName =
-                contractor.toString().substring(0, 32).toLowerCase();
-            contractorLocation =
-                contractor.toString().substring(32, 96).toLowerCase();
-            Matcher nameMatcher = namePattern.matcher(contractorName);
-            Matcher locationMatcher =
-                locationPattern.matcher(contractorLocation);
-            if (nameMatcher.find() && locationMatcher.find()
-                    && !contractor.getDeleted()) {
-                values.add(contractor);
+    /**
+     *  Returns an array of the live records which match every condition of
+     *  a query. The plan of the query's shape is compiled on first use and
+     *  reused by later queries of the same shape. The condition with the
+     *  fewest matches is looked up in its index, and the records found are
+     *  checked against the other conditions; a query with no indexed
+     *  condition checks every record. Ordered results are taken from the
+     *  records found with a heap which holds only as many records as are
+     *  wanted, or, when the records found would be many more than the
+     *  records walked to find enough matches, by walking the index of the
+     *  order field.
+     *
+     *@param  query  the query to run.
+     *@return        the record numbers matching the query, in the order of
+     *      the query or else in ascending order.
+     */
+    public long[] find(Query query) {
+        QueryPlan plan = getPlan(query);
+        Object[] arguments = bind(plan, query);
+        if (arguments == null) {
+            return new long[0];
+        }
+        int order = query.getOrderField();
+        int limit = query.getLimit();
+        int driver = -1;
+        int fewest = Integer.MAX_VALUE;
+        for (int step = 0; step < plan.getStepCount(); step++) {
+            if (plan.isIndexed(step)) {
+                int count = count(plan, step, arguments[step]);
+                if (count < fewest) {
+                    driver = step;
+                    fewest = count;
+                }
+            }
+        }
+        if (order >= 0 && driver < 0) {
+            return select(order, query.isDescending(), limit,
+                    Integer.MAX_VALUE, plan, arguments);
+        }
+        /* 
+         * Were the matches spread evenly through the order index, about
+         * limit * live / fewest entries would be walked to find enough. As
+         * they may not be, the walk gives up once it has cost as much as
+         * checking the records found by the index.
+         */
+        if (order >= 0 && (long) limit * liveRecords.size()
+                < (long) fewest * fewest) {
+            long[] results = select(order, query.isDescending(), limit,
+                    fewest, plan, arguments);
+            if (results != null) {
+                return results;
+            }
+        }
+        if (driver < 0 && plan.getStepCount() == 0) {
+            /* Every live record matches. */
+            return toResults(liveRecords.toArray(), liveRecords.size(),
+                    limit);
+        }
+        if (driver < 0) {
+            long[] matches = scan(plan, arguments);
+            if (matches.length <= limit) {
+                return matches;
             }
+            long[] results = new long[limit];
+            System.arraycopy(matches, 0, results, 0, limit);
+            return results;
         }
+        if (fewest == 0 || limit == 0) {
+            return new long[0];
+        }
+        int[] candidates = lookup(plan, driver, arguments[driver]);
+        /* 
+         * A prefix or range lookup returns exactly the records passing its
+         * step; an exact lookup returns every record with the value as a
+         * prefix, and a token lookup only one of its posting lists.
+         */
+        int operation = plan.getOperation(driver);
+        int skip = (operation == QueryPlan.PREFIX
+                || operation == QueryPlan.RANGE) ? driver : -1;
+        int found = 0;
+        for (int i = 0; i < candidates.length; i++) {
+            if (matches(candidates[i], plan, arguments, skip)) {
+                candidates[found++] = candidates[i];
+            }
+        }
+        if (order >= 0) {
+            return new RecordOrder(table, order, query.isDescending()).select(
+                    candidates, found, limit);
+        }
+        return toResults(candidates, found, limit);
+    }
+
+
+    /**
+     *  Copies the first of a set of record numbers into a results array.
+     *
+     *@param  records  the record numbers, followed by unused space.
+     *@param  count    the number of records.
+     *@param  limit    the maximum number of results.
+     *@return          the results.
+     */
+    private static long[] toResults(int[] records, int count, int limit) {
+        int found = Math.min(count, limit);
         /* Create results array of correct size and populate it. */
-        results = new long[values.size()];
-        for (int i = 0; i < values.size(); i++) {
-            results[i] = ((Contractor) values.get(i)).getRecordNo();
+        long[] results = new long[found];
+        for (int i = 0; i < found; i++) {
+            results[i] = records[i];
         }
         return results;
     }
 
 
     /**
-     *  Creates a new record in the database (possibly reusing a deleted
-     *  entry). Inserts the given data, and returns the record number of the
-     *  new record.
+     *  Finds the first matching records in order by walking the index of
+     *  the order field.
      *
-     *@param  data                    the new record to insert.
-     *@return                         the identifier of the record inserted.
-     *@throws  DuplicateKeyException  thrown if a record already exists with 
-     *      this key.
+     *@param  field       the name, size or rate field to order by.
+     *@param  descending  true to order from the highest value down.
+     *@param  limit       the maximum number of records to find.
+     *@param  budget      the maximum number of index entries to walk.
+     *@param  plan        the plan of the query.
+     *@param  arguments   the argument of each step of the plan.
+     *@return             the first matching record numbers, in order, or
+     *      null if the budget ran out before enough were found.
      */
-    public long createRecord(String[] data)
-             throws DuplicateKeyException {
-        int recNo = 0;
-        long pointer;
-        try {
-            dataFile = new RandomAccessFile(databaseFilePath, "rw");
-            dataFile.seek(schemaLength);
-            while (dataFile.getFilePointer() < dataFile.length()) {
-                pointer = dataFile.getFilePointer();
-                dataFile.read(record);
-                String recStr = new String(record, "US-ASCII");
-                /* We can re-use a previously deleted record. */
-                if (recStr.substring(0, 1).equals("1")) {
-                    dataFile.seek(pointer);
-                    dataFile.write(" ".getBytes());
-                    dataFile.write(padFieldValue(data[0], 32).getBytes());
-                    dataFile.write(padFieldValue(data[1], 64).getBytes());
-                    dataFile.write(padFieldValue(data[2], 64).getBytes());
-                    dataFile.write(padFieldValue(data[3], 6).getBytes());
-                    dataFile.write(padFieldValue(data[4], 8).getBytes());
-                    dataFile.write(padFieldValue(data[5], 8).getBytes());
-                    dataFile.close();
-                    return new Long(recNo).longValue();
-                }
-                recNo++;
-            }
-            /* No deleted record to re-use, so create a new one. */
-            dataFile.write(" ".getBytes());
-            dataFile.write(padFieldValue(data[0], 32).getBytes());
-            dataFile.write(padFieldValue(data[1], 64).getBytes());
-            dataFile.write(padFieldValue(data[2], 64).getBytes());
-            dataFile.write(padFieldValue(data[3], 6).getBytes());
-            dataFile.write(padFieldValue(data[4], 8).getBytes());
-            dataFile.write(padFieldValue(data[5], 8).getBytes());
-            dataFile.close();
-            return new Long(recNo).longValue();
-        } catch (IOException e) {
-            throw new DuplicateKeyException("Error updating record : " +
-                    e.getMessage());
+    private long[] select(int field, boolean descending, int limit,
+            int budget, final QueryPlan plan, final Object[] arguments) {
+        RecordFilter filter = new RecordFilter() {
+            public boolean accepts(int recNo) {
+                return matches(recNo, plan, arguments, -1);
+            }
+        };
+        int[] selected;
+        if (field == ContractorTable.NAME) {
+            selected = nameIndex.select(filter, limit, descending, budget);
+        } else {
+            selected = getRangeIndex(field).select(filter, limit, descending,
+                    budget);
         }
-
+        if (selected == null) {
+            return null;
+        }
+        long[] results = new long[selected.length];
+        for (int i = 0; i < selected.length; i++) {
+            results[i] = selected[i];
+        }
+        return results;
     }
 
 
-
     /**
-     *  Any potential users of the locking API should invoke
-     *  lock/process/unlock as a sequence within the context of a single
-     *  method call which guarantees it will happen within a single thread of
-     *  execution.
+     *  Gets the plan of the shape of a query, compiling it if no query of
+     *  that shape has been run before.
      *
-     *@param  recNo                        the identifier of the record to lock.
-     *@return                              the cookie the record was
-     *      locked with.
-     *@exception  RecordNotFoundException  thrown if the record was not found
-     *      in the database.
+     *@param  query  the query to plan.
+     *@return        the plan of the query's shape.
      */
-    public long lockRecord(long recNo)
-             throws RecordNotFoundException {
-        synchronized (lockedContractors) {
-            while (lockedContractors.containsKey(new Long(recNo))) {
-                try {
-                    lockedContractors.wait();
-                } catch (InterruptedException e) {}
+    private QueryPlan getPlan(Query query) {
+        String shape = query.getShape();
+        synchronized (plans) {
+            QueryPlan plan = (QueryPlan) plans.get(shape);
+            if (plan == null) {
+                plan = new QueryPlan(query);
+                plans.put(shape, plan);
             }
-            long cookie = (long) (Math.random() * Long.MAX_VALUE);
-            lockedContractors.put(new Long(recNo), new Long(cookie));
-            return cookie;
+            return plan;
         }
     }
 
 
     /**
-     *  Releases the lock on a record. Cookie must be the cookie returned when
-     *  the record was locked.
+     *  Normalizes the values of a query into the arguments of each step of
+     *  its plan: the lower case bytes of a prefix or exact value, the
+     *  posting lists of a token step, or the bounds of a range.
      *
-     *@param  recNo               the identifier of the record to unlock.
-     *@param  cookie              the cookie this record was locked with.
-     *@throws  SecurityException  thrown if the record is locked with a cookie 
-     *      other than lockCookie.
+     *@param  plan   the plan of the query's shape.
+     *@param  query  the query.
+     *@return        the argument of each step, or null if a prefix or exact
+     *      value can match no record.
      */
-    public void unlock(long recNo, long cookie)
-             throws SecurityException {
-        synchronized (lockedContractors) {
-            Long key = new Long(recNo);
-            if (!lockedContractors.containsKey(key)) {
-                throw new SecurityException("Error unlocking contractor record " 
-                        + "- record was locked by a different client"); 
-            }
-            Long lockCookie = (Long) lockedContractors.get(key);
-            if (lockCookie.longValue() == cookie) {
-                lockedContractors.remove(key);
-                lockedContractors.notifyAll();
-            } else {
-                throw new SecurityException("Error unlocking the contractor "
-                        + "record");
+    private Object[] bind(QueryPlan plan, Query query) {
+        Object[] arguments = new Object[plan.getStepCount()];
+        for (int step = 0; step < arguments.length; step++) {
+            int field = plan.getField(step);
+            String value = query.getValue(field);
+            switch (plan.getOperation(step)) {
+                case QueryPlan.PREFIX:
+                    arguments[step] = ContractorTable.toPrefix(value);
+                    if (arguments[step] == null) {
+                        return null;
+                    }
+                    break;
+                case QueryPlan.EXACT:
+                    arguments[step] = ContractorTable.toPrefix(value.trim());
+                    if (arguments[step] == null) {
+                        return null;
+                    }
+                    break;
+                case QueryPlan.TOKENS:
+                    arguments[step] = getPostings(field, value);
+                    break;
+                case QueryPlan.RANGE:
+                    if (query.getCondition(field) == Query.RANGE) {
+                        arguments[step] = new int[]{query.getMinimum(field),
+                                query.getMaximum(field)};
+                    } else {
+                        arguments[step] = getExactRange(field, value);
+                    }
+                    break;
+                default:
+                    break;
             }
         }
+        return arguments;
     }
 
 
     /**
-     *  Pads the value to be inserted into a field to the length of the field,
-     *  with spaces. If the value is too long for the field, the value is
-     *  shortened to the length of the field.
+     *  Gets the posting lists of the tokens of an exact value of the
+     *  specialities or owner field.
      *
-     *@param  value        the value to be inserted to the field.
-     *@param  fieldLength  the requisite length of the field.
-     *@return              the value padded to the length of the field.
+     *@param  field  the index of the field.
+     *@param  value  the exact value.
+     *@return        the posting list of each token of the value.
      */
-    private String padFieldValue(String value, int fieldLength) {
-        /* If the string is too long, reduce its length. */
-        if (value.length() > fieldLength) {
-            return value.substring(0, fieldLength + 1);
+    private int[][] getPostings(int field, String value) {
+        if (field == ContractorTable.OWNER) {
+            return new int[][]{ownerIndex.find(getOwnerToken(value))};
         }
-        else {
-            /* Pad string with space characters up to correct length. */
-            int padding = fieldLength - value.length();
-            for (int i = 0; i < padding; i++) {
-                value += " ";
-            }
-            return value;
+        String[] tokens = TokenIndex.tokenize(value);
+        int[][] postings = new int[tokens.length][];
+        for (int i = 0; i < tokens.length; i++) {
+            postings[i] = specialityIndex.find(tokens[i]);
         }
+        return postings;
     }
 
 
     /**
-     *  Reads the database file, parsing the header and record structure. A
-     *  <code>Contractor</code> object is created to represent each record,
-     *  and placed in the list of contractors.
+     *  Normalizes an owner for lookup in the owner index.
      *
-     *@param  filePath  the path of the database file.
+     *@param  owner  the owner to look up.
+     *@return        the owner token under which its bookings are indexed.
      */
-    private synchronized void readFile(String filePath) {
+    private String getOwnerToken(String owner) {
+        String token = TokenIndex.normalize(owner);
+        /* Owners longer than the field are truncated when they are stored. */
+        int length = table.getFieldLength(ContractorTable.OWNER);
+        if (token.length() > length) {
+            token = token.substring(0, length);
+        }
+        return token;
+    }
+
+
+    /**
+     *  Gets the range of one value matching an exact size or rate. A value
+     *  which is not a number gives an empty range.
+     *
+     *@param  field  the index of the size or rate field.
+     *@param  value  the exact value.
+     *@return        the minimum and maximum of the range.
+     */
+    private int[] getExactRange(int field, String value) {
+        int column = table.getColumn(field);
+        String[] data = new String[column + 1];
+        data[column] = value.trim();
+        ByteBuffer record = ByteBuffer.wrap(codec.encode(data));
         try {
-            /* Open the file for read-only access. */
-            dataFile = new RandomAccessFile(filePath, "r");
+            int number = field == ContractorTable.RATE
+                    ? codec.decodeCents(record, 0, column)
+                    : codec.decodeInt(record, 0, column);
+            return new int[]{number, number};
+        } catch (NumberFormatException nfe) {
+            return new int[]{1, 0};
+        }
+    }
+
+
+    /**
+     *  Counts the records passing an indexed step.
+     *
+     *@param  plan      the plan.
+     *@param  step      the position of the step.
+     *@param  argument  the argument of the step.
+     *@return           the number of records the index holds for the step.
+     */
+    private int count(QueryPlan plan, int step, Object argument) {
+        int field = plan.getField(step);
+        switch (plan.getOperation(step)) {
+            case QueryPlan.BOOKED:
+                return bookedRecords.size();
+            case QueryPlan.UNBOOKED:
+                return liveRecords.size() - bookedRecords.size();
+            case QueryPlan.RANGE:
+                int[] range = (int[]) argument;
+                return getRangeIndex(field).count(range[0], range[1]);
+            case QueryPlan.TOKENS:
+                int[][] postings = (int[][]) argument;
+                int fewest = Integer.MAX_VALUE;
+                for (int i = 0; i < postings.length; i++) {
+                    fewest = Math.min(fewest, postings[i].length);
+                }
+                return fewest;
+            default:
+                return getPrefixIndex(field).count((byte[]) argument);
+        }
+    }
+
+
+    /**
+     *  Looks up the records passing an indexed step.
+     *
+     *@param  plan      the plan.
+     *@param  step      the position of the step.
+     *@param  argument  the argument of the step.
+     *@return           a new array of the records found, in ascending
+     *      order.
+     */
+    private int[] lookup(QueryPlan plan, int step, Object argument) {
+        int field = plan.getField(step);
+        int[] records;
+        switch (plan.getOperation(step)) {
+            case QueryPlan.BOOKED:
+                return bookedRecords.toArray();
+            case QueryPlan.UNBOOKED:
+                return liveRecords.without(bookedRecords);
+            case QueryPlan.RANGE:
+                int[] range = (int[]) argument;
+                records = getRangeIndex(field).find(range[0], range[1]);
+                break;
+            case QueryPlan.TOKENS:
+                int[][] postings = (int[][]) argument;
+                int smallest = 0;
+                for (int i = 1; i < postings.length; i++) {
+                    if (postings[i].length < postings[smallest].length) {
+                        smallest = i;
+                    }
+                }
+                /* Posting lists are shared, so they are copied, not sorted. */
+                return postings[smallest].clone();
+            default:
+                records = getPrefixIndex(field).find((byte[]) argument);
+                break;
+        }
+        Arrays.sort(records);
+        return records;
+    }
+
+
+    /**
+     *  Gets the prefix index of the name or location field.
+     *
+     *@param  field  the index of the field.
+     *@return        the prefix index of the field.
+     */
+    private PrefixIndex getPrefixIndex(int field) {
+        return field == ContractorTable.NAME ? nameIndex : locationIndex;
+    }
+
+
+    /**
+     *  Gets the range index of the size or rate field.
+     *
+     *@param  field  the index of the field.
+     *@return        the range index of the field.
+     */
+    private RangeIndex getRangeIndex(int field) {
+        return field == ContractorTable.SIZE ? sizeIndex : rateIndex;
+    }
+
+
+    /**
+     *  Finds matching records by checking every record in the table. Large
+     *  tables are split into ranges which are checked in parallel.
+     *
+     *@param  plan       the plan of the query.
+     *@param  arguments  the argument of each step of the plan.
+     *@return            the matching record numbers, in order.
+     */
+    private long[] scan(QueryPlan plan, Object[] arguments) {
+        int size = table.size();
+        if (size >= parallelScanThreshold) {
+            return (long[]) POOL.invoke(
+                    new ScanTask(0, size, plan, arguments));
+        }
+        return scanRange(0, size, plan, arguments);
+    }
+
+
+    /**
+     *  Finds matching records by checking each record in a range on the
+     *  calling thread.
+     *
+     *@param  from       the first record in the range.
+     *@param  to         the record after the last record in the range.
+     *@param  plan       the plan of the query.
+     *@param  arguments  the argument of each step of the plan.
+     *@return            the matching record numbers, in order.
+     */
+    private long[] scanRange(int from, int to, QueryPlan plan,
+            Object[] arguments) {
+        long[] matches = new long[16];
+        int found = 0;
+        /* Check each record in the range for a match. */
+        for (int i = from; i < to; i++) {
+            if (matches(i, plan, arguments, -1)) {
+                if (found == matches.length) {
+                    long[] grown = new long[found * 2];
+                    System.arraycopy(matches, 0, grown, 0, found);
+                    matches = grown;
+                }
+                matches[found++] = i;
+            }
+        }
+        /* Create results array of correct size and populate it. */
+        long[] results = new long[found];
+        System.arraycopy(matches, 0, results, 0, found);
+        return results;
+    }
+
+
+    /**
+     *  Tests whether a record is live and passes every step of a plan.
+     *
+     *@param  recNo      the record to test.
+     *@param  plan       the plan of the query.
+     *@param  arguments  the argument of each step of the plan.
+     *@param  skip       the position of a step known to be passed, or -1.
+     *@return            true if the record matches.
+     */
+    private boolean matches(int recNo, QueryPlan plan, Object[] arguments,
+            int skip) {
+        if (!liveRecords.contains(recNo)) {
+            return false;
+        }
+        for (int step = 0; step < arguments.length; step++) {
+            if (step != skip
+                    && !passes(recNo, plan.getOperation(step),
+                        plan.getField(step), arguments[step])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Tests whether a record passes a single step of a plan.
+     *
+     *@param  recNo      the record to test.
+     *@param  operation  the test made by the step.
+     *@param  field      the field tested by the step.
+     *@param  argument   the argument of the step.
+     *@return            true if the record passes the step.
+     */
+    private boolean passes(int recNo, int operation, int field,
+            Object argument) {
+        switch (operation) {
+            case QueryPlan.BOOKED:
+                return bookedRecords.contains(recNo);
+            case QueryPlan.UNBOOKED:
+                return !bookedRecords.contains(recNo);
+            case QueryPlan.RANGE:
+                int[] range = (int[]) argument;
+                return getRangeIndex(field).matches(recNo, range[0],
+                        range[1]);
+            case QueryPlan.TOKENS:
+                int[][] postings = (int[][]) argument;
+                for (int i = 0; i < postings.length; i++) {
+                    if (TokenIndex.binarySearch(postings[i], recNo) < 0) {
+                        return false;
+                    }
+                }
+                return true;
+            case QueryPlan.PREFIX:
+                return table.startsWith(recNo, field, (byte[]) argument);
+            default:
+                return table.matchesExactly(recNo, field, (byte[]) argument);
+        }
+    }
+
+
+    /**
+     *  Creates a new record in the database (possibly reusing a deleted
+     *  entry). Inserts the given data, and returns the record number of the
+     *  new record.
+     *
+     *@param  data                    the new record to insert.
+     *@return                         the identifier of the record inserted.
+     *@throws  DuplicateKeyException  thrown if a record already exists with 
+     *      this key.
+     */
+    public long createRecord(String[] data)
+             throws DuplicateKeyException {
+        long recNo;
+        /* Build the new record, with a valid (not deleted) flag. */
+        byte[] newRecord = codec.encode(data);
+        try {
+            codec.decodeInt(ByteBuffer.wrap(newRecord), 0,
+                    table.getColumn(ContractorTable.SIZE));
+        } catch (NumberFormatException nfe) {
+            throw new DuplicateKeyException("Invalid contractor size : "
+                    + data[3]);
+        }
+        try {
+            codec.decodeCents(ByteBuffer.wrap(newRecord), 0,
+                    table.getColumn(ContractorTable.RATE));
+        } catch (NumberFormatException nfe) {
+            throw new DuplicateKeyException("Invalid contractor rate : "
+                    + data[4]);
+        }
+        long recordStamp;
+        long logPosition;
+        /* 
+         * The slot is chosen and filled in one step, so that two creates
+         * cannot choose the same deleted record.
+         */
+        synchronized (table) {
+            /* 
+             * Either re-use a deleted record, or if there is none, append a
+             * new one to the end of the file.
+             */
+            boolean reused = !freeRecords.isEmpty();
+            if (reused) {
+                recNo = ((Long) freeRecords.removeFirst()).longValue();
+            } else {
+                recNo = table.size();
+            }
+            try {
+                logPosition = log.append(WriteAheadLog.OP_CREATE, recNo,
+                        newRecord);
+            } catch (IOException e) {
+                if (reused) {
+                    freeRecords.addFirst(Long.valueOf(recNo));
+                }
+                throw new DuplicateKeyException("Error logging the record : "
+                        + e.getMessage());
+            }
+            if (reused) {
+                table.put((int) recNo, 0, newRecord);
+            } else {
+                table.add(newRecord);
+            }
+            indexRecord((int) recNo);
+            recordStamp = stamp((int) recNo);
+            /* Changes to the slot's previous record must not be written. */
+            ownerWrites[(int) recNo] = recordStamp - 1;
+            flagWrites[(int) recNo] = recordStamp - 1;
+            version++;
+            pendingWrites++;
+        }
+        /* Wait for the log to reach the disk along with other writers. */
+        try {
+            log.sync(logPosition);
+        } catch (IOException e) {
+            synchronized (table) {
+                /*
+                 * The record was never created, whatever has been done to it
+                 * since. Its slot is written to the file as deleted, so that
+                 * the file has no gap where it was appended, and so that
+                 * later changes of the record are not written.
+                 */
+                if (!table.isDeleted((int) recNo)) {
+                    table.setFlag((int) recNo, ContractorTable.DELETED);
+                    unindexRecord((int) recNo);
+                    freeRecords.addFirst(Long.valueOf(recNo));
+                }
+                long deletedStamp = stamp((int) recNo);
+                ownerWrites[(int) recNo] = deletedStamp;
+                flagWrites[(int) recNo] = deletedStamp;
+                version++;
+                try {
+                    storage.write(recordPosition(recNo),
+                            table.getRecord((int) recNo));
+                } catch (IOException fe) {
+                    System.err.println("Error clearing a failed record from "
+                            + "the database file : " + fe.getMessage());
+                }
+            }
+            abortLoggedWrite(logPosition, 1);
+            throw new DuplicateKeyException("Error logging the record : "
+                    + e.getMessage());
+        }
+        applyLoggedRecord((int) recNo, recordStamp, newRecord);
+        return recNo;
+    }
+
+
+
+    /**
+     *  Any potential users of the locking API should invoke
+     *  lock/process/unlock as a sequence within the context of a single
+     *  method call which guarantees it will happen within a single thread of
+     *  execution.
+     *  <p>
+     *  Threads waiting for a record are granted it in the order in which
+     *  they asked for it. A lock is leased for a limited time (see
+     *  <code>setLockLease</code>). A lock whose lease has expired is
+     *  reclaimed by the next thread waiting for the record, after which the
+     *  old cookie is no longer accepted.
+     *
+     *@param  recNo                        the identifier of the record to lock.
+     *@return                              the cookie the record was
+     *      locked with.
+     *@exception  RecordNotFoundException  thrown if the record was not found
+     *      in the database, or the thread was interrupted while waiting, in
+     *      which case its interrupted status is set again.
+     */
+    public long lockRecord(long recNo)
+             throws RecordNotFoundException {
+        checkRecordNumber(recNo);
+        try {
+            return locks.lock(recNo, -1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RecordNotFoundException("Interrupted waiting to lock "
+                    + "the contractor");
+        }
+    }
+
+
+    /**
+     *  Locks a record as <code>lockRecord</code> does, but waits no longer
+     *  than a timeout for the record to become free.
+     *
+     *@param  recNo                        the identifier of the record to lock.
+     *@param  timeout                      the longest time in milliseconds
+     *      to wait.
+     *@return                              the cookie the record was locked
+     *      with, or -1 if the record was still locked after the timeout.
+     *@exception  RecordNotFoundException  thrown if the record was not found
+     *      in the database.
+     *@exception  InterruptedException     thrown if the thread was
+     *      interrupted while waiting.
+     */
+    public long tryLockRecord(long recNo, long timeout)
+             throws RecordNotFoundException, InterruptedException {
+        checkRecordNumber(recNo);
+        return locks.lock(recNo, Math.max(timeout, 0));
+    }
+
+
+    /**
+     *  Tests whether a record is locked through <code>lockRecord</code> or
+     *  <code>tryLockRecord</code>. The answer may be out of date as soon as
+     *  it is given.
+     *
+     *@param  recNo                        the identifier of the record.
+     *@return                              true if the record is locked.
+     *@exception  RecordNotFoundException  thrown if the record was not found
+     *      in the database.
+     */
+    public boolean isLocked(long recNo) throws RecordNotFoundException {
+        checkRecordNumber(recNo);
+        return locks.isLocked(recNo);
+    }
+
+
+    /**
+     *  Sets the time for which record locks taken from now on are leased.
+     *
+     *@param  lease  the time in milliseconds for which a lock is leased.
+     */
+    public void setLockLease(long lease) {
+        locks.setLease(lease);
+    }
+
+
+    /**
+     *  Gets the statistics of the most contended record locks since the
+     *  server started: those of the records threads have waited for longest
+     *  in total.
+     *
+     *@param  count  the maximum number of records to report.
+     *@return        a <code>List</code> of <code>LockStatistics</code>
+     *      objects, most contended first.
+     */
+    public List getLockStatistics(int count) {
+        return locks.getStatistics(count);
+    }
+
+
+    /**
+     *  Checks that a record number lies within the table.
+     *
+     *@param  recNo                        the identifier of the record.
+     *@exception  RecordNotFoundException  thrown if the record is not in the
+     *      table.
+     */
+    private void checkRecordNumber(long recNo)
+             throws RecordNotFoundException {
+        if (recNo >= table.size() || recNo < 0) {
+            throw new RecordNotFoundException("Could not find the contractor");
+        }
+    }
+
+
+    /**
+     *  Releases the lock on a record. Cookie must be the cookie returned when
+     *  the record was locked.
+     *
+     *@param  recNo               the identifier of the record to unlock.
+     *@param  cookie              the cookie this record was locked with.
+     *@throws  SecurityException  thrown if the record is locked with a cookie 
+     *      other than lockCookie.
+     */
+    public void unlock(long recNo, long cookie)
+             throws SecurityException {
+        locks.unlock(recNo, cookie);
+    }
+
+
+    /**
+     *  Sets the number of records at or above which a search that cannot use
+     *  an index checks the records in parallel, split into ranges across
+     *  the processors of the server.
+     *
+     *@param  threshold  the number of records, or
+     *      <code>Integer.MAX_VALUE</code> to always scan on the calling
+     *      thread.
+     */
+    public void setParallelScanThreshold(int threshold) {
+        this.parallelScanThreshold = Math.max(threshold, 1);
+    }
+
+
+    /**
+     *  Gets the version of the data. The version changes whenever a record
+     *  is updated, deleted or created, so a result computed from the data
+     *  remains correct for as long as the version is unchanged.
+     *
+     *@return    the current data version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+
+    /**
+     *  Returns an array of the live records booked by the specified owner, in
+     *  time proportional to the number of records booked.
+     *
+     *@param  owner  the owner to search for.
+     *@return        the record numbers booked by the owner, in order.
+     */
+    public long[] findByOwner(String owner) {
+        int[] booked = ownerIndex.find(getOwnerToken(owner));
+        long[] results = new long[booked.length];
+        for (int i = 0; i < booked.length; i++) {
+            results[i] = booked[i];
+        }
+        return results;
+    }
+
+
+    /**
+     *  Summarizes the records found by a query in groups, counting the
+     *  records of each group and finding their lowest, highest and average
+     *  size and rate. The summaries are computed from the table in memory,
+     *  so only they, and not the records, need to be sent to a client.
+     *  <p>
+     *  Records are grouped on the value of a field, compared without regard
+     *  to case and surrounding spaces; a record is counted in the group of
+     *  each of its specialities. Records may also be grouped by booking
+     *  state, or all put in one group. The order and limit of the query are
+     *  applied before the records are grouped.
+     *
+     *@param  query                      the query finding the records to
+     *      summarize.
+     *@param  groupBy                    the field to group on, one of the
+     *      field constants of <code>Query</code>, or
+     *      <code>Summary.BOOKING</code> or <code>Summary.ALL</code>.
+     *@return                            a <code>List</code> of
+     *      <code>Summary</code> objects, one for each group holding a record,
+     *      in order of the group's value.
+     *@throws  IllegalArgumentException  thrown if the grouping is not known.
+     */
+    public List summarize(Query query, int groupBy) {
+        if (groupBy < Summary.ALL || groupBy > Summary.BOOKING) {
+            throw new IllegalArgumentException("Cannot group by field : "
+                    + groupBy);
+        }
+        long[] records = find(query);
+        if (groupBy == Query.SPECIALITIES) {
+            return sort(summarizeSpecialities(records));
+        }
+        Map groups = new HashMap();
+        for (int i = 0; i < records.length; i++) {
+            int recNo = (int) records[i];
+            if (!liveRecords.contains(recNo)) {
+                /* Deleted since it was found. */
+                continue;
+            }
+            int size = table.getNumber(recNo, ContractorTable.SIZE);
+            int rate = table.getNumber(recNo, ContractorTable.RATE);
+            Summary summary;
+            if (groupBy == Query.SIZE || groupBy == Query.RATE) {
+                /* The key is only decoded for the first record of a group. */
+                int value = groupBy == Query.SIZE ? size : rate;
+                Integer group = Integer.valueOf(value);
+                summary = (Summary) groups.get(group);
+                if (summary == null) {
+                    summary = new Summary(table.getField(recNo, groupBy)
+                            .trim(), value);
+                    groups.put(group, summary);
+                }
+            } else {
+                String key;
+                if (groupBy == Summary.BOOKING) {
+                    key = bookedRecords.contains(recNo) ? "booked"
+                            : "unbooked";
+                } else if (groupBy == Summary.ALL) {
+                    key = "";
+                } else {
+                    key = table.getField(recNo, groupBy).trim();
+                }
+                String group = key.toLowerCase();
+                summary = (Summary) groups.get(group);
+                if (summary == null) {
+                    summary = new Summary(key, 0);
+                    groups.put(group, summary);
+                }
+            }
+            summary.add(size, rate);
+        }
+        return sort(new ArrayList(groups.values()));
+    }
+
+
+    /**
+     *  Summarizes records in groups by speciality, reading the members of
+     *  each group from its posting list in the speciality index rather than
+     *  splitting the specialities of every record.
+     *
+     *@param  records  the records to summarize.
+     *@return          a <code>List</code> of <code>Summary</code> objects,
+     *      one for each speciality of the records.
+     */
+    private List summarizeSpecialities(long[] records) {
+        RecordBitmap found = new RecordBitmap();
+        for (int i = 0; i < records.length; i++) {
+            found.add((int) records[i]);
+        }
+        List summaries = new ArrayList();
+        String[] tokens = specialityIndex.getTokens();
+        for (int i = 0; i < tokens.length; i++) {
+            int[] posting = specialityIndex.find(tokens[i]);
+            Summary summary = null;
+            for (int j = 0; j < posting.length; j++) {
+                int recNo = posting[j];
+                if (!found.contains(recNo) || !liveRecords.contains(recNo)) {
+                    continue;
+                }
+                if (summary == null) {
+                    summary = new Summary(getSpeciality(recNo, tokens[i]),
+                            0);
+                    summaries.add(summary);
+                }
+                summary.add(table.getNumber(recNo, ContractorTable.SIZE),
+                        table.getNumber(recNo, ContractorTable.RATE));
+            }
+        }
+        return summaries;
+    }
+
+
+    /**
+     *  Finds a speciality of a record as it is written in the record.
+     *
+     *@param  recNo  the record.
+     *@param  token  the normalized speciality.
+     *@return        the speciality, trimmed, or the token if the record no
+     *      longer offers it.
+     */
+    private String getSpeciality(int recNo, String token) {
+        String[] specialities = table.getField(recNo,
+                ContractorTable.SPECIALITIES).split(",");
+        for (int i = 0; i < specialities.length; i++) {
+            if (TokenIndex.normalize(specialities[i]).equals(token)) {
+                return specialities[i].trim();
+            }
+        }
+        return token;
+    }
+
+
+    /**
+     *  Sorts summaries into the order of their groups.
+     *
+     *@param  summaries  the summaries to sort.
+     *@return            the sorted summaries.
+     */
+    private static List sort(List summaries) {
+        Collections.sort(summaries,
+            new Comparator() {
+                public int compare(Object first, Object second) {
+                    return ((Summary) first).compareTo((Summary) second);
+                }
+            });
+        return summaries;
+    }
+
+
+    /**
+     *  Gets a view of a single contractor record.
+     *
+     *@param  recNo                     the identifier of the record.
+     *@return                           the contractor view of the record.
+     *@throws  RecordNotFoundException  thrown if the record is not found.
+     */
+    public Contractor getContractor(long recNo)
+             throws RecordNotFoundException {
+        if (recNo >= table.size() || recNo < 0) {
+            throw new RecordNotFoundException("Could not find the contractor");
+        }
+        return table.getContractor((int) recNo);
+    }
+
+
+    /**
+     *  Writes a new owner into a record in the table, moving the record to
+     *  its new owner in the owner index and the bitmap of booked records.
+     *  The caller must hold the monitor of the table.
+     *
+     *@param  recNo  the record to update.
+     *@param  owner  the padded owner field.
+     */
+    private void setOwner(int recNo, byte[] owner) {
+        boolean live = !table.isDeleted(recNo);
+        if (live) {
+            ownerIndex.remove(recNo);
+        }
+        table.put(recNo, table.getFieldOffset(ContractorTable.OWNER), owner);
+        if (live) {
+            ownerIndex.add(recNo);
+            setBooked(recNo);
+        }
+    }
+
+
+    /**
+     *  Increments the version stamp of a record, growing the arrays of stamps
+     *  if the record has been appended. The caller must hold the monitor of
+     *  the table.
+     *
+     *@param  recNo  the record.
+     *@return        the new stamp of the record.
+     */
+    private long stamp(int recNo) {
+        long[] current = recordVersions;
+        if (recNo >= current.length) {
+            int length = Math.max(recNo + 1, current.length * 2);
+            current = grow(current, length);
+            ownerWrites = grow(ownerWrites, length);
+            flagWrites = grow(flagWrites, length);
+            recordVersions = current;
+        }
+        return ++current[recNo];
+    }
+
+
+    /**
+     *  Checks whether an encoded field is blank, holding only padding.
+     *
+     *@param  field  the encoded field.
+     *@return        true if every byte of the field is a space.
+     */
+    private static boolean isBlank(byte[] field) {
+        for (int i = 0; i < field.length; i++) {
+            if (field[i] != ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     *  Copies an array of stamps into a longer array.
+     *
+     *@param  stamps  the stamps.
+     *@param  length  the length of the new array.
+     *@return         the new array, holding the stamps followed by zeros.
+     */
+    private static long[] grow(long[] stamps, int length) {
+        long[] grown = new long[length];
+        System.arraycopy(stamps, 0, grown, 0, stamps.length);
+        return grown;
+    }
+
+
+    /**
+     *  Adds or removes a live record in the bitmap of booked records,
+     *  according to whether its owner field is blank.
+     *
+     *@param  recNo  the record.
+     */
+    private void setBooked(int recNo) {
+        if (table.isBlank(recNo, ContractorTable.OWNER)) {
+            bookedRecords.remove(recNo);
+        } else {
+            bookedRecords.add(recNo);
+        }
+    }
+
+
+    /**
+     *  Adds a live record to every index and bitmap. The caller must hold
+     *  the monitor of the table.
+     *
+     *@param  recNo  the record to add.
+     */
+    private void indexRecord(int recNo) {
+        liveRecords.add(recNo);
+        setBooked(recNo);
+        nameIndex.add(recNo);
+        locationIndex.add(recNo);
+        specialityIndex.add(recNo);
+        sizeIndex.add(recNo);
+        rateIndex.add(recNo);
+        ownerIndex.add(recNo);
+    }
+
+
+    /**
+     *  Removes a record from every index and bitmap, before it is deleted.
+     *  The caller must hold the monitor of the table.
+     *
+     *@param  recNo  the record to remove.
+     */
+    private void unindexRecord(int recNo) {
+        liveRecords.remove(recNo);
+        bookedRecords.remove(recNo);
+        nameIndex.remove(recNo);
+        locationIndex.remove(recNo);
+        specialityIndex.remove(recNo);
+        sizeIndex.remove(recNo);
+        rateIndex.remove(recNo);
+        ownerIndex.remove(recNo);
+    }
+
+
+    /**
+     *  Gets the position in the database file at which a record starts.
+     *
+     *@param  recNo  the identifier of the record.
+     *@return        the file offset of the record's deleted flag.
+     */
+    private long recordPosition(long recNo) {
+        return schemaLength + (recNo * (recordLength + 1));
+    }
+
+
+    /**
+     *  Cancels a logged change which could not be forced to disk, and has
+     *  been undone in the table, by logging an abort entry for it, so that
+     *  the change is not replayed at the next startup. The change still
+     *  counts as a pending write until the abort is on the disk, so the log
+     *  cannot be checkpointed, and the position of the change reused by a
+     *  new entry, first. If the abort cannot be made durable either, the
+     *  change may be recovered at the next startup.
+     *
+     *@param  logPosition  the log position at the end of the failed change.
+     *@param  writes       the number of pending writes counted for the
+     *      change.
+     */
+    private void abortLoggedWrite(long logPosition, int writes) {
+        try {
+            long abortPosition;
+            synchronized (table) {
+                abortPosition = log.append(WriteAheadLog.OP_ABORT,
+                        logPosition, new byte[0]);
+            }
+            log.sync(abortPosition);
+        } catch (IOException e) {
+            System.err.println("Error cancelling a failed change in the "
+                    + "database log : " + e.getMessage());
+        } finally {
+            synchronized (table) {
+                finishWrites(writes);
+            }
+        }
+    }
+
+
+    /**
+     *  Applies a change that is already durable in the log to the database
+     *  file. If the file cannot be updated the change is not lost, since it
+     *  will be replayed from the log at the next startup.
+     *  <p>
+     *  Changes reach this point in whatever order their threads finish
+     *  waiting for the log, so the write is made under the monitor of the
+     *  table, and skipped if a later change of the same field has already
+     *  been written, leaving the file as the log would replay it.
+     *
+     *@param  recNo        the record changed.
+     *@param  flag         true for a change of the deleted flag, false for a
+     *      change of the owner field.
+     *@param  recordStamp  the version stamp the change gave the record.
+     *@param  bytes        the bytes to write.
+     */
+    private void applyLoggedWrite(int recNo, boolean flag, long recordStamp,
+            byte[] bytes) {
+        synchronized (table) {
+            try {
+                long[] written = flag ? flagWrites : ownerWrites;
+                if (recordStamp > written[recNo]) {
+                    storage.write(recordPosition(recNo) + (flag ? 0
+                            : table.getFieldOffset(ContractorTable.OWNER)),
+                            bytes);
+                    written[recNo] = recordStamp;
+                }
+            } catch (IOException e) {
+                System.err.println("Error updating database file, change "
+                        + "kept in log : " + e.getMessage());
+                checkpointBlocked = true;
+            } finally {
+                finishWrites(1);
+            }
+        }
+        checkpoint();
+    }
+
+
+    /**
+     *  Applies a created record that is already durable in the log to the
+     *  database file, in the same way as <code>applyLoggedWrite</code>. The
+     *  owner field and the deleted flag are left as they are if a later
+     *  change of them has already been written.
+     *
+     *@param  recNo        the record created.
+     *@param  recordStamp  the version stamp the create gave the record.
+     *@param  record       the bytes of the new record.
+     */
+    private void applyLoggedRecord(int recNo, long recordStamp,
+            byte[] record) {
+        synchronized (table) {
+            try {
+                int ownerOffset = table.getFieldOffset(ContractorTable.OWNER);
+                int ownerEnd = ownerOffset
+                        + table.getFieldLength(ContractorTable.OWNER);
+                long position = recordPosition(recNo);
+                int start = flagWrites[recNo] > recordStamp ? 1 : 0;
+                if (ownerWrites[recNo] > recordStamp) {
+                    writeRange(position, record, start, ownerOffset);
+                    writeRange(position, record, ownerEnd, record.length);
+                } else {
+                    writeRange(position, record, start, record.length);
+                    ownerWrites[recNo] = recordStamp;
+                }
+                flagWrites[recNo] = Math.max(flagWrites[recNo], recordStamp);
+            } catch (IOException e) {
+                System.err.println("Error updating database file, record "
+                        + "kept in log : " + e.getMessage());
+                checkpointBlocked = true;
+            } finally {
+                finishWrites(1);
+            }
+        }
+        checkpoint();
+    }
+
+
+    /**
+     *  Writes part of a record to the database file.
+     *
+     *@param  position      the position of the record in the file.
+     *@param  record        the bytes of the record.
+     *@param  from          the offset of the first byte to write.
+     *@param  to            the offset after the last byte to write.
+     *@throws  IOException  thrown if the file could not be written.
+     */
+    private void writeRange(long position, byte[] record, int from, int to)
+             throws IOException {
+        if (from < to) {
+            byte[] range = new byte[to - from];
+            System.arraycopy(record, from, range, 0, range.length);
+            storage.write(position + from, range);
+        }
+    }
+
+
+    /**
+     *  Counts logged changes as applied to the database file, or cancelled,
+     *  waking <code>close</code> once none is outstanding. The caller must
+     *  hold the monitor of the table.
+     *
+     *@param  writes  the number of changes.
+     */
+    private void finishWrites(int writes) {
+        pendingWrites -= writes;
+        if (pendingWrites == 0) {
+            table.notifyAll();
+        }
+    }
+
+
+    /**
+     *  Closes the database file and the log when the server shuts down,
+     *  waiting no longer than <code>CLOSE_TIMEOUT</code> for logged changes
+     *  to be applied to the file. If all of them have been, the file is
+     *  forced to disk and the log emptied, otherwise the log is kept to be
+     *  replayed at the next startup. Changes made afterwards fail, since
+     *  they cannot be logged.
+     */
+    private void close() {
+        synchronized (table) {
+            long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT;
+            long now = System.currentTimeMillis();
+            while (pendingWrites > 0 && now < deadline) {
+                try {
+                    table.wait(deadline - now);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                now = System.currentTimeMillis();
+            }
+            try {
+                if (pendingWrites == 0 && !checkpointBlocked) {
+                    storage.force();
+                    log.truncate();
+                }
+            } catch (IOException e) {
+                System.err.println("Error checkpointing the database log : "
+                        + e.getMessage());
+            }
+            try {
+                storage.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the database file : "
+                        + e.getMessage());
+            }
+            try {
+                log.close();
+            } catch (IOException e) {
+                System.err.println("Error closing the database log : "
+                        + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     *  Empties the log once it has grown beyond <code>CHECKPOINT_SIZE</code>.
+     *  The database file is forced to disk first, and no new changes may be
+     *  logged while the checkpoint is taken.
+     */
+    private void checkpoint() {
+        synchronized (table) {
+            if (pendingWrites > 0 || checkpointBlocked
+                    || log.size() < CHECKPOINT_SIZE) {
+                return;
+            }
+            try {
+                storage.force();
+                log.truncate();
+            } catch (IOException e) {
+                System.err.println("Error checkpointing the database log : "
+                        + e.getMessage());
+            }
+        }
+    }
+
+
+    /**
+     *  Replays every change held in the log onto the database file, then
+     *  empties the log. Changes in the log were made durable before being
+     *  acknowledged, but may not have reached the database file before the
+     *  server stopped. Changes cancelled by an abort entry were reported as
+     *  failed, and are skipped.
+     *
+     *@param  filePath         the path of the database file.
+     *@throws  IOException     thrown if the log could not be replayed.
+     */
+    private void replayLog(String filePath) throws IOException {
+        List entries = log.readEntries();
+        Set aborted = new HashSet();
+        Iterator it = entries.iterator();
+        while (it.hasNext()) {
+            WriteAheadLog.Entry entry = (WriteAheadLog.Entry) it.next();
+            if (entry.getOp() == WriteAheadLog.OP_ABORT) {
+                aborted.add(Long.valueOf(entry.getRecNo()));
+            }
+        }
+        int recovered = 0;
+        if (!entries.isEmpty()) {
+            RandomAccessFile file = new RandomAccessFile(filePath, "rw");
+            try {
+                it = entries.iterator();
+                while (it.hasNext()) {
+                    WriteAheadLog.Entry entry = (WriteAheadLog.Entry) it.next();
+                    if (entry.getOp() == WriteAheadLog.OP_ABORT
+                            || aborted.contains(Long.valueOf(
+                            entry.getPosition()))) {
+                        continue;
+                    }
+                    recovered++;
+                    if (entry.getOp() == WriteAheadLog.OP_BATCH_UPDATE) {
+                        replayBatch(file, entry);
+                        continue;
+                    }
+                    long position = recordPosition(entry.getRecNo());
+                    if (entry.getOp() == WriteAheadLog.OP_UPDATE) {
+                        position += table.getFieldOffset(ContractorTable.OWNER);
+                    }
+                    file.seek(position);
+                    file.write(entry.getData());
+                }
+                file.getFD().sync();
+            } finally {
+                file.close();
+            }
+            System.out.println("Recovered " + recovered
+                    + " changes from the database log");
+        }
+        log.truncate();
+    }
+
+
+    /**
+     *  Replays a logged update of the owner field of several records onto
+     *  the database file.
+     *
+     *@param  file             the database file.
+     *@param  entry            the logged batch update.
+     *@throws  IOException     thrown if the update could not be written.
+     */
+    private void replayBatch(RandomAccessFile file, WriteAheadLog.Entry entry)
+             throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(entry.getData());
+        byte[] owner = new byte[data.remaining() / (int) entry.getRecNo()
+                - 8];
+        while (data.hasRemaining()) {
+            long recNo = data.getLong();
+            data.get(owner);
+            file.seek(recordPosition(recNo)
+                    + table.getFieldOffset(ContractorTable.OWNER));
+            file.write(owner);
+        }
+    }
+
+
+    /**
+     *  Reads the database file, parsing the header and record structure. Each
+     *  record is copied into the in-memory contractor table.
+     *
+     *@param  filePath  the path of the database file.
+     */
+    private synchronized void readFile(String filePath) {
+        try {
+            /* Open the file for read-only access. */
+            dataFile = new RandomAccessFile(filePath, "r");
             /* Read in the header information. */
             cookie = dataFile.readInt();
             if (cookie != MAGIC_COOKIE) {
@@ -436,7 +2103,6 @@ public final class Data implements DBAccess {
             noOfFields = dataFile.readShort();
             fieldNames = new String[noOfFields];
             fieldLengths = new int[noOfFields];
-            record = new byte[recordLength + 1];
             /* Schema description variables. */
             short fieldNameLength;
             String fieldName;
@@ -454,42 +2120,258 @@ public final class Data implements DBAccess {
             }
             /* File pointer is now at end of schema. */
             schemaLength = dataFile.getFilePointer();
-            /* Read in the record data. */
-            while (dataFile.getFilePointer() < dataFile.length()) {
-                dataFile.read(record);
-                String recStr = new String(record, "US-ASCII");
-                /* Create a new contractor object for each record. */
-                Contractor contractor = new Contractor(
-                        recordNo,
-                        recStr.substring(0, 1),
-                        recStr.substring(1, 33),
-                        recStr.substring(33, 97),
-                        recStr.substring(97, 161),
-                        Integer.parseInt((recStr.substring(161, 
-                                167)).replaceAll("\\s+$", "")),
-                        recStr.substring(167, 175),
-                        recStr.substring(175, 183)
-                        );
-                contractors.add(contractor);
-                recordNo++;
+            /* Record offsets are derived once from the schema. */
+            codec = new RecordCodec(fieldNames, fieldLengths);
+            if (codec.getRecordSize() != recordLength + 1) {
+                throw new IOException("Schema field lengths do not match "
+                        + "the record length");
             }
+            table = new ContractorTable(codec, (int)
+                    ((dataFile.length() - schemaLength) / (recordLength + 1)));
+            /* Apply any changes logged before the last shutdown. */
+            replayLog(filePath);
+            /* 
+             * Read the record data into the table in bulk, then check the
+             * records in parallel, collecting the deleted records in order.
+             */
+            long startTime = System.currentTimeMillis();
+            int recordCount = (int) ((dataFile.length() - schemaLength)
+                    / (recordLength + 1));
+            table.load(dataFile.getChannel(), schemaLength, recordCount);
+            freeRecords = (LinkedList) POOL.invoke(
+                    new LoadTask(table, 0, recordCount));
+            nameIndex = new PrefixIndex(table, ContractorTable.NAME);
+            locationIndex = new PrefixIndex(table, ContractorTable.LOCATION);
+            specialityIndex = new TokenIndex(table,
+                    ContractorTable.SPECIALITIES);
+            sizeIndex = new RangeIndex(table, ContractorTable.SIZE);
+            rateIndex = new RangeIndex(table, ContractorTable.RATE);
+            ownerIndex = new TokenIndex(table, ContractorTable.OWNER);
+            nameIndex.build();
+            locationIndex.build();
+            specialityIndex.build();
+            sizeIndex.build();
+            rateIndex.build();
+            ownerIndex.build();
+            liveRecords = new RecordBitmap();
+            bookedRecords = new RecordBitmap();
+            recordVersions = new long[recordCount];
+            ownerWrites = new long[recordCount];
+            flagWrites = new long[recordCount];
+            for (int i = 0; i < recordCount; i++) {
+                if (!table.isDeleted(i)) {
+                    liveRecords.add(i);
+                    setBooked(i);
+                }
+            }
+            System.out.println("Loaded " + recordCount + " records in "
+                    + (System.currentTimeMillis() - startTime) + " ms");
             /* Close the file. */
             dataFile.close();
         } catch (IOException ioe) {
-            System.out.println("Error reading the database file");
+            System.out.println("Error reading the database file : "
+                    + ioe.getMessage());
         }
     }
 
 
     /**
-     *  Returns the single Data instance.
+     *  Opens the storage through which records are written to the database
+     *  file. An unrecognised mode falls back to <code>STORAGE_FILE</code>.
+     *
+     *@param  filePath     the path of the database file.
+     *@param  storageMode  the storage mode to open.
+     *@return              the storage for the database file.
+     */
+    private RecordStorage openStorage(String filePath, String storageMode) {
+        if (STORAGE_MAPPED.equalsIgnoreCase(storageMode)) {
+            try {
+                return new MappedRecordStorage(filePath);
+            } catch (IOException ioe) {
+                System.err.println("Error mapping the database file, "
+                        + "falling back to file storage");
+            }
+        }
+        return new FileRecordStorage(filePath);
+    }
+
+
+    /**
+     *  A task which checks a range of records loaded into the contractor
+     *  table, splitting the range across the pool when it is large. The task
+     *  returns the deleted records in the range, in record number order.
+     */
+    private static final class LoadTask extends RecursiveTask {
+
+        /**
+         * Guarantee a consistent serialVersionUID value across different
+         * java compiler implementations.
+         */
+        static final long serialVersionUID = 1L;
+
+        /**
+         *  The table the records were loaded into.
+         */
+        private ContractorTable table;
+
+        /**
+         *  The first record in the range.
+         */
+        private int from;
+
+        /**
+         *  The record after the last record in the range.
+         */
+        private int to;
+
+
+        /**
+         *  Constructor for the LoadTask object.
+         *
+         *@param  table  the table the records were loaded into.
+         *@param  from   the first record in the range.
+         *@param  to     the record after the last record in the range.
+         */
+        LoadTask(ContractorTable table, int from, int to) {
+            this.table = table;
+            this.from = from;
+            this.to = to;
+        }
+
+
+        /**
+         *  Checks the range of records.
+         *
+         *@return                          the list of deleted record
+         *      numbers in the range.
+         *@throws  NumberFormatException   thrown if a record has an invalid
+         *      size or rate field.
+         */
+        protected Object compute() {
+            if (to - from <= LOAD_TASK_SIZE) {
+                LinkedList deleted = new LinkedList();
+                for (int i = from; i < to; i++) {
+                    /* 
+                     * Fail now, rather than in a view or an index, on a bad
+                     * size or rate.
+                     */
+                    table.getInt(i, ContractorTable.SIZE);
+                    table.getNumber(i, ContractorTable.RATE);
+                    if (table.isDeleted(i)) {
+                        deleted.addLast(Long.valueOf(i));
+                    }
+                }
+                return deleted;
+            }
+            int middle = (from + to) >>> 1;
+            LoadTask left = new LoadTask(table, from, middle);
+            LoadTask right = new LoadTask(table, middle, to);
+            left.fork();
+            LinkedList deleted = (LinkedList) right.compute();
+            LinkedList result = (LinkedList) left.join();
+            result.addAll(deleted);
+            return result;
+        }
+    }
+
+
+    /**
+     *  A task which finds the matching records in a range of the table,
+     *  splitting the range across the pool when it is large. The task
+     *  returns the matching record numbers in the range, in order.
+     */
+    private final class ScanTask extends RecursiveTask {
+
+        /**
+         * Guarantee a consistent serialVersionUID value across different
+         * java compiler implementations.
+         */
+        static final long serialVersionUID = 1L;
+
+        /**
+         *  The first record in the range.
+         */
+        private int from;
+
+        /**
+         *  The record after the last record in the range.
+         */
+        private int to;
+
+        /**
+         *  The plan of the query.
+         */
+        private QueryPlan plan;
+
+        /**
+         *  The argument of each step of the plan.
+         */
+        private Object[] arguments;
+
+
+        /**
+         *  Constructor for the ScanTask object.
+         *
+         *@param  from       the first record in the range.
+         *@param  to         the record after the last record in the range.
+         *@param  plan       the plan of the query.
+         *@param  arguments  the argument of each step of the plan.
+         */
+        ScanTask(int from, int to, QueryPlan plan, Object[] arguments) {
+            this.from = from;
+            this.to = to;
+            this.plan = plan;
+            this.arguments = arguments;
+        }
+
+
+        /**
+         *  Finds the matching records in the range.
+         *
+         *@return    the array of matching record numbers.
+         */
+        protected Object compute() {
+            if (to - from <= SCAN_TASK_SIZE) {
+                return scanRange(from, to, plan, arguments);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(from, middle, plan, arguments);
+            ScanTask right = new ScanTask(middle, to, plan, arguments);
+            left.fork();
+            long[] upper = (long[]) right.compute();
+            long[] lower = (long[]) left.join();
+            long[] merged = new long[lower.length + upper.length];
+            System.arraycopy(lower, 0, merged, 0, lower.length);
+            System.arraycopy(upper, 0, merged, lower.length, upper.length);
+            return merged;
+        }
+    }
+
+
+    /**
+     *  Returns the single Data instance, using file storage.
      *
      *@param  path  the path of the database file.
      *@return       the Instance value
      */
     public static synchronized Data getInstance(String path) {
+        return getInstance(path, STORAGE_FILE);
+    }
+
+
+    /**
+     *  Returns the single Data instance. The storage mode only takes effect
+     *  when the instance is first created.
+     *
+     *@param  path         the path of the database file.
+     *@param  storageMode  the storage mode used to update the file, one of
+     *      <code>STORAGE_FILE</code> or <code>STORAGE_MAPPED</code>.
+     *@return              the Instance value
+     */
+    public static synchronized Data getInstance(String path,
+            String storageMode) {
         if (ref == null) {
-            ref = new Data(path);
+            ref = new Data(path, storageMode);
         }
         return ref;
     }
@@ -0,0 +1,71 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ *  A <code>RecordStorage</code> that opens the database file with a
+ *  <code>RandomAccessFile</code> for each operation, closing it again once
+ *  the operation is complete. No file handle is held between operations.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class FileRecordStorage implements RecordStorage {
+
+    /**
+     *  The path of the database file.
+     */
+    private String databaseFilePath;
+
+
+    /**
+     *  Constructor for the FileRecordStorage object.
+     *
+     *@param  filePath  the path of the database file.
+     */
+    FileRecordStorage(String filePath) {
+        this.databaseFilePath = filePath;
+    }
+
+
+    /**
+     *  Writes bytes to the file.
+     *
+     *@param  position         the file offset to write to.
+     *@param  data             the bytes to write.
+     *@throws  IOException     thrown if the bytes could not be written.
+     */
+    public void write(long position, byte[] data) throws IOException {
+        RandomAccessFile dataFile = new RandomAccessFile(databaseFilePath, "rw");
+        try {
+            dataFile.seek(position);
+            dataFile.write(data);
+        } finally {
+            dataFile.close();
+        }
+    }
+
+
+    /**
+     *  Forces all writes made so far to the disk.
+     *
+     *@throws  IOException     thrown if the file could not be forced.
+     */
+    public void force() throws IOException {
+        RandomAccessFile dataFile = new RandomAccessFile(databaseFilePath, "rw");
+        try {
+            dataFile.getFD().sync();
+        } finally {
+            dataFile.close();
+        }
+    }
+
+
+    /**
+     *  Nothing is held open between operations, so there is nothing to
+     *  release.
+     */
+    public void close() {
+    }
+}
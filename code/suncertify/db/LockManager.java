@@ -0,0 +1,464 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  The record locks of the database. Records are spread over a fixed number
+ *  of stripes by record number, and each stripe keeps the locks of its
+ *  records in a map guarded by its own mutex, so locking records in
+ *  different stripes never contends.
+ *  <p>
+ *  Each locked record has its own first in, first out queue of waiting
+ *  threads, each waiting on a condition of its stripe's mutex. Unlocking a
+ *  record hands the lock straight to the thread at the head of the queue
+ *  and wakes only that thread, so the record is granted in order of arrival
+ *  and a thread arriving later cannot take it first.
+ *  <p>
+ *  A lock is a lease, which expires a fixed time after it is taken. A thread
+ *  waiting for a record whose lease has expired reclaims the record and
+ *  takes the lock itself, so a lock which is never unlocked cannot block the
+ *  record for good. The previous holder's cookie is then no longer valid. A
+ *  lease which has expired remains valid until the record is reclaimed.
+ *  Locks are not tied to the thread which took them: RMI runs calls on
+ *  pooled threads, which outlive the clients they served, so the lease is
+ *  the only way a lock is reclaimed.
+ *  <p>
+ *  The manager keeps statistics of the contention on each record which has
+ *  been locked: the time threads waited for it, the length of its queue and
+ *  the time it was held.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class LockManager {
+
+    /**
+     *  The number of stripes, a power of two.
+     */
+    private static final int STRIPE_COUNT = 64;
+
+    /**
+     *  The stripes, each holding the locks of the records whose number
+     *  selects it.
+     */
+    private Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    /**
+     *  The time in milliseconds for which a lock is leased.
+     */
+    private volatile long lease;
+
+
+    /**
+     *  Constructor for the LockManager object.
+     *
+     *@param  lease  the time in milliseconds for which a lock is leased.
+     */
+    LockManager(long lease) {
+        setLease(lease);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+
+    /**
+     *  Sets the time for which locks taken from now on are leased.
+     *
+     *@param  lease  the time in milliseconds for which a lock is leased.
+     */
+    void setLease(long lease) {
+        this.lease = Math.max(lease, 1);
+    }
+
+
+    /**
+     *  Locks a record, waiting without consuming CPU cycles until any other
+     *  holder unlocks it or its lease expires, or until a timeout.
+     *
+     *@param  recNo                     the record to lock.
+     *@param  timeout                   the longest time in milliseconds to
+     *      wait, or a negative number to wait as long as it takes.
+     *@return                           the cookie the record was locked
+     *      with, or -1 if the timeout passed first.
+     *@throws  InterruptedException     thrown if the thread is interrupted
+     *      while waiting.
+     */
+    long lock(long recNo, long timeout) throws InterruptedException {
+        long now = System.currentTimeMillis();
+        long deadline = timeout < 0 || timeout > Long.MAX_VALUE - now
+                ? Long.MAX_VALUE : now + timeout;
+        Stripe stripe = getStripe(recNo);
+        Long key = Long.valueOf(recNo);
+        stripe.mutex.lock();
+        try {
+            LockStatistics statistics = stripe.getStatistics(key);
+            RecordLock lock = (RecordLock) stripe.locks.get(key);
+            if (lock != null) {
+                return await(stripe, key, lock, statistics, deadline)
+                        ? lock.cookie : -1;
+            }
+            lock = new RecordLock();
+            stripe.locks.put(key, lock);
+            grant(lock);
+            statistics.locked(-1);
+            return lock.cookie;
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+
+    /**
+     *  Gives the lock of a record a new holder, with a new cookie and lease.
+     *  The caller must hold the mutex of the record's stripe.
+     *
+     *@param  lock  the lock of the record.
+     */
+    private void grant(RecordLock lock) {
+        long now = System.currentTimeMillis();
+        lock.held = true;
+        lock.since = System.nanoTime();
+        lock.expires = lease > Long.MAX_VALUE - now ? Long.MAX_VALUE
+                : now + lease;
+        lock.cookie = (long) (Math.random() * Long.MAX_VALUE);
+    }
+
+
+    /**
+     *  Releases the lock of a record, handing it to the thread at the head of
+     *  its queue if there is one. The caller must hold the mutex of the
+     *  record's stripe.
+     *
+     *@param  stripe      the stripe of the record.
+     *@param  key         the record number.
+     *@param  lock        the lock of the record.
+     *@param  statistics  the statistics of the record.
+     */
+    private void release(Stripe stripe, Long key, RecordLock lock,
+            LockStatistics statistics) {
+        long now = System.nanoTime();
+        statistics.released(now - lock.since);
+        if (lock.queue.isEmpty()) {
+            stripe.locks.remove(key);
+            return;
+        }
+        Waiter next = (Waiter) lock.queue.removeFirst();
+        grant(lock);
+        next.granted = true;
+        statistics.locked(now - next.arrived);
+        next.ready.signal();
+        wakeHead(lock);
+    }
+
+
+    /**
+     *  Wakes the thread at the head of the queue of a record, if there is
+     *  one, so that it watches the lease of the lock, which it reclaims once
+     *  the lease expires. The caller must hold the mutex of the record's
+     *  stripe.
+     *
+     *@param  lock  the lock of the record.
+     */
+    private void wakeHead(RecordLock lock) {
+        if (!lock.queue.isEmpty()) {
+            ((Waiter) lock.queue.getFirst()).ready.signal();
+        }
+    }
+
+
+    /**
+     *  Joins the end of the queue of a record and waits to be handed the
+     *  lock, or, at the head of the queue, for the lease of the lock to
+     *  expire. The caller must hold the mutex of the record's stripe.
+     *
+     *@param  stripe                 the stripe of the record.
+     *@param  key                    the record number.
+     *@param  lock                   the lock of the record.
+     *@param  statistics             the statistics of the record.
+     *@param  deadline               the time after which to stop waiting.
+     *@return                        true if the thread now holds the lock,
+     *      false if the deadline passed first.
+     *@throws  InterruptedException  thrown if the thread is interrupted
+     *      while waiting.
+     */
+    private boolean await(Stripe stripe, Long key, RecordLock lock,
+            LockStatistics statistics, long deadline)
+             throws InterruptedException {
+        Waiter waiter = new Waiter(stripe.mutex.newCondition());
+        lock.queue.addLast(waiter);
+        statistics.queued(lock.queue.size());
+        boolean returned = false;
+        try {
+            while (!waiter.granted) {
+                long now = System.currentTimeMillis();
+                boolean first = lock.queue.getFirst() == waiter;
+                if (first && now >= lock.expires) {
+                    /* Reclaim the record from its holder. */
+                    statistics.released(System.nanoTime() - lock.since);
+                    lock.queue.removeFirst();
+                    grant(lock);
+                    waiter.granted = true;
+                    statistics.locked(lock.since - waiter.arrived);
+                    wakeHead(lock);
+                    break;
+                }
+                if (now >= deadline) {
+                    return false;
+                }
+                long wake = first ? Math.min(deadline, lock.expires)
+                        : deadline;
+                waiter.ready.await(wake - now, TimeUnit.MILLISECONDS);
+            }
+            returned = true;
+            return true;
+        } finally {
+            if (!waiter.granted) {
+                boolean first = lock.queue.getFirst() == waiter;
+                lock.queue.remove(waiter);
+                statistics.abandoned();
+                if (first) {
+                    wakeHead(lock);
+                }
+            } else if (!returned) {
+                /* Interrupted as the lock was handed over; pass it on. */
+                release(stripe, key, lock, statistics);
+            }
+        }
+    }
+
+
+    /**
+     *  Unlocks a record, handing it to the thread which has waited for it
+     *  longest.
+     *
+     *@param  recNo               the record to unlock.
+     *@param  cookie              the cookie the record was locked with.
+     *@throws  SecurityException  thrown if the record is not locked, or is
+     *      locked with a different cookie.
+     */
+    void unlock(long recNo, long cookie) throws SecurityException {
+        Stripe stripe = getStripe(recNo);
+        Long key = Long.valueOf(recNo);
+        stripe.mutex.lock();
+        try {
+            RecordLock lock = (RecordLock) stripe.locks.get(key);
+            if (lock == null || !lock.held) {
+                throw new SecurityException("Error unlocking contractor record "
+                        + "- record was locked by a different client");
+            }
+            if (lock.cookie != cookie) {
+                throw new SecurityException("Error unlocking the contractor "
+                        + "record");
+            }
+            release(stripe, key, lock, stripe.getStatistics(key));
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+
+    /**
+     *  Tests whether a record is locked with a cookie.
+     *
+     *@param  recNo   the record to test.
+     *@param  cookie  the cookie.
+     *@return         true if the record is locked with the cookie.
+     */
+    boolean isLockedWith(long recNo, long cookie) {
+        Stripe stripe = getStripe(recNo);
+        stripe.mutex.lock();
+        try {
+            RecordLock lock = (RecordLock) stripe.locks.get(
+                    Long.valueOf(recNo));
+            return lock != null && lock.held && lock.cookie == cookie;
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+
+    /**
+     *  Tests whether a record is locked by anyone. A lock whose lease has
+     *  expired counts as held until the record is reclaimed.
+     *
+     *@param  recNo  the record to test.
+     *@return        true if the record is locked.
+     */
+    boolean isLocked(long recNo) {
+        Stripe stripe = getStripe(recNo);
+        stripe.mutex.lock();
+        try {
+            RecordLock lock = (RecordLock) stripe.locks.get(
+                    Long.valueOf(recNo));
+            return lock != null && lock.held;
+        } finally {
+            stripe.mutex.unlock();
+        }
+    }
+
+
+    /**
+     *  Gets the statistics of the most contended records, those threads have
+     *  waited for longest in total.
+     *
+     *@param  count  the maximum number of records to return.
+     *@return        a <code>List</code> of copies of the
+     *      <code>LockStatistics</code> of the records, most contended first.
+     */
+    List getStatistics(int count) {
+        List all = new ArrayList();
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[i];
+            stripe.mutex.lock();
+            try {
+                Iterator it = stripe.statistics.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry entry = (Map.Entry) it.next();
+                    RecordLock lock = (RecordLock) stripe.locks.get(
+                            entry.getKey());
+                    all.add(((LockStatistics) entry.getValue()).copy(
+                            lock == null ? 0 : lock.queue.size()));
+                }
+            } finally {
+                stripe.mutex.unlock();
+            }
+        }
+        Collections.sort(all, new Comparator() {
+            public int compare(Object first, Object second) {
+                return ((LockStatistics) first).compareTo(
+                        (LockStatistics) second);
+            }
+        });
+        return new ArrayList(all.subList(0, Math.max(0,
+                Math.min(count, all.size()))));
+    }
+
+
+    /**
+     *  Gets the stripe holding the lock of a record.
+     *
+     *@param  recNo  the record.
+     *@return        the stripe of the record.
+     */
+    private Stripe getStripe(long recNo) {
+        return stripes[(int) recNo & (STRIPE_COUNT - 1)];
+    }
+
+
+    /**
+     *  A stripe of the record locks.
+     */
+    private static final class Stripe {
+
+        /**
+         *  The mutex guarding the locks of the stripe.
+         */
+        private ReentrantLock mutex = new ReentrantLock();
+
+        /**
+         *  The lock of each record of the stripe which is locked or waited
+         *  for, keyed by record number.
+         */
+        private Map locks = new HashMap();
+
+        /**
+         *  The statistics of each record of the stripe which has been
+         *  locked, keyed by record number.
+         */
+        private Map statistics = new HashMap();
+
+
+        /**
+         *  Gets the statistics of a record, starting them if the record has
+         *  not been locked before. The caller must hold the mutex.
+         *
+         *@param  key  the record number.
+         *@return      the statistics of the record.
+         */
+        LockStatistics getStatistics(Long key) {
+            LockStatistics recordStatistics = (LockStatistics) statistics.get(
+                    key);
+            if (recordStatistics == null) {
+                recordStatistics = new LockStatistics(key.longValue());
+                statistics.put(key, recordStatistics);
+            }
+            return recordStatistics;
+        }
+    }
+
+
+    /**
+     *  The lock of a record, kept while the record is locked.
+     */
+    private static final class RecordLock {
+
+        /**
+         *  The threads waiting for the record, as <code>Waiter</code>
+         *  objects in order of arrival.
+         */
+        private LinkedList queue = new LinkedList();
+
+        /**
+         *  Set while the record is locked.
+         */
+        private boolean held;
+
+        /**
+         *  The cookie the record is locked with.
+         */
+        private long cookie;
+
+        /**
+         *  The time at which the lease of the lock expires.
+         */
+        private long expires;
+
+        /**
+         *  The time at which the lock was granted, in nanoseconds.
+         */
+        private long since;
+    }
+
+
+    /**
+     *  A thread waiting in the queue of a record.
+     */
+    private static final class Waiter {
+
+        /**
+         *  The condition the thread waits on.
+         */
+        private Condition ready;
+
+        /**
+         *  The time at which the thread joined the queue, in nanoseconds.
+         */
+        private long arrived = System.nanoTime();
+
+        /**
+         *  Set once the lock has been handed to the thread.
+         */
+        private boolean granted = false;
+
+
+        /**
+         *  Constructor for the Waiter object.
+         *
+         *@param  ready  the condition the thread waits on.
+         */
+        Waiter(Condition ready) {
+            this.ready = ready;
+        }
+    }
+}
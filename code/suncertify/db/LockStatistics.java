@@ -0,0 +1,312 @@
+package suncertify.db;
+
+import java.io.Serializable;
+
+/**
+ *  The contention on the lock of one contractor record since the server
+ *  started: how often the record was locked, how often and how long threads
+ *  waited for it, how many waited at once, and how long it was held. Times
+ *  are in milliseconds.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ *@see        suncertify.db.Data#getLockStatistics(int)
+ */
+public final class LockStatistics implements Serializable {
+    /**
+     * Guarantee a consistent serialVersionUID value across different
+     * java compiler implementations.
+     */
+    static final long serialVersionUID = 1L;
+
+    /**
+     *  The number of nanoseconds in a millisecond.
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /**
+     *  The record the statistics are for.
+     */
+    private long recNo;
+
+    /**
+     *  The number of times the record was locked.
+     */
+    private long lockCount = 0;
+
+    /**
+     *  The number of times a thread had to wait for the record and was
+     *  granted it.
+     */
+    private long waitCount = 0;
+
+    /**
+     *  The number of times a thread gave up waiting for the record, on a
+     *  timeout or an interrupt.
+     */
+    private long abandonCount = 0;
+
+    /**
+     *  The total time threads waited for the record, in nanoseconds.
+     */
+    private long totalWait = 0;
+
+    /**
+     *  The longest time a thread waited for the record, in nanoseconds.
+     */
+    private long maximumWait = 0;
+
+    /**
+     *  The number of times the record was unlocked or reclaimed.
+     */
+    private long holdCount = 0;
+
+    /**
+     *  The total time the record was held, in nanoseconds.
+     */
+    private long totalHold = 0;
+
+    /**
+     *  The longest time the record was held, in nanoseconds.
+     */
+    private long maximumHold = 0;
+
+    /**
+     *  The number of threads waiting for the record when the statistics
+     *  were taken.
+     */
+    private int queueDepth = 0;
+
+    /**
+     *  The most threads ever waiting for the record at once.
+     */
+    private int maximumQueueDepth = 0;
+
+
+    /**
+     *  Constructor for the LockStatistics object.
+     *
+     *@param  recNo  the record the statistics are for.
+     */
+    LockStatistics(long recNo) {
+        this.recNo = recNo;
+    }
+
+
+    /**
+     *  Counts a lock of the record.
+     *
+     *@param  wait  the time the thread waited for the lock, in nanoseconds,
+     *      or a negative number if it did not have to wait.
+     */
+    void locked(long wait) {
+        lockCount++;
+        if (wait >= 0) {
+            waitCount++;
+            totalWait += wait;
+            maximumWait = Math.max(maximumWait, wait);
+        }
+    }
+
+
+    /**
+     *  Counts a thread giving up waiting for the record.
+     */
+    void abandoned() {
+        abandonCount++;
+    }
+
+
+    /**
+     *  Counts the release of the record.
+     *
+     *@param  hold  the time the record was held, in nanoseconds.
+     */
+    void released(long hold) {
+        holdCount++;
+        totalHold += hold;
+        maximumHold = Math.max(maximumHold, hold);
+    }
+
+
+    /**
+     *  Notes the number of threads waiting for the record after one more
+     *  has joined them.
+     *
+     *@param  depth  the number of threads waiting.
+     */
+    void queued(int depth) {
+        maximumQueueDepth = Math.max(maximumQueueDepth, depth);
+    }
+
+
+    /**
+     *  Takes a copy of the statistics as they stand.
+     *
+     *@param  depth  the number of threads waiting for the record now.
+     *@return        the copy.
+     */
+    LockStatistics copy(int depth) {
+        LockStatistics copy = new LockStatistics(recNo);
+        copy.lockCount = lockCount;
+        copy.waitCount = waitCount;
+        copy.abandonCount = abandonCount;
+        copy.totalWait = totalWait;
+        copy.maximumWait = maximumWait;
+        copy.holdCount = holdCount;
+        copy.totalHold = totalHold;
+        copy.maximumHold = maximumHold;
+        copy.queueDepth = depth;
+        copy.maximumQueueDepth = maximumQueueDepth;
+        return copy;
+    }
+
+
+    /**
+     *  Compares the contention on this record with another, the record
+     *  threads have waited for longest in total coming first.
+     *
+     *@param  other  the other record's statistics.
+     *@return        a negative number, zero or a positive number as this
+     *      record is more, as or less contended than the other.
+     */
+    int compareTo(LockStatistics other) {
+        if (totalWait != other.totalWait) {
+            return totalWait > other.totalWait ? -1 : 1;
+        }
+        if (lockCount != other.lockCount) {
+            return lockCount > other.lockCount ? -1 : 1;
+        }
+        return recNo < other.recNo ? -1 : recNo > other.recNo ? 1 : 0;
+    }
+
+
+    /**
+     *  Gets the record the statistics are for.
+     *
+     *@return    the identifier of the record.
+     */
+    public long getRecordNo() {
+        return recNo;
+    }
+
+
+    /**
+     *  Gets the number of times the record was locked.
+     *
+     *@return    the number of locks.
+     */
+    public long getLockCount() {
+        return lockCount;
+    }
+
+
+    /**
+     *  Gets the number of locks for which a thread had to wait.
+     *
+     *@return    the number of contended locks.
+     */
+    public long getWaitCount() {
+        return waitCount;
+    }
+
+
+    /**
+     *  Gets the number of times a thread gave up waiting for the record, on
+     *  a timeout or an interrupt.
+     *
+     *@return    the number of abandoned waits.
+     */
+    public long getAbandonCount() {
+        return abandonCount;
+    }
+
+
+    /**
+     *  Gets the total time threads waited for the record before being
+     *  granted it.
+     *
+     *@return    the total wait, in milliseconds.
+     */
+    public double getTotalWaitTime() {
+        return totalWait / NANOS_PER_MILLI;
+    }
+
+
+    /**
+     *  Gets the average time a thread which had to wait for the record
+     *  waited before being granted it.
+     *
+     *@return    the average wait, in milliseconds.
+     */
+    public double getAverageWaitTime() {
+        return waitCount == 0 ? 0 : totalWait / NANOS_PER_MILLI / waitCount;
+    }
+
+
+    /**
+     *  Gets the longest time a thread waited for the record before being
+     *  granted it.
+     *
+     *@return    the longest wait, in milliseconds.
+     */
+    public double getMaximumWaitTime() {
+        return maximumWait / NANOS_PER_MILLI;
+    }
+
+
+    /**
+     *  Gets the average time the record was held.
+     *
+     *@return    the average hold, in milliseconds.
+     */
+    public double getAverageHoldTime() {
+        return holdCount == 0 ? 0 : totalHold / NANOS_PER_MILLI / holdCount;
+    }
+
+
+    /**
+     *  Gets the longest time the record was held.
+     *
+     *@return    the longest hold, in milliseconds.
+     */
+    public double getMaximumHoldTime() {
+        return maximumHold / NANOS_PER_MILLI;
+    }
+
+
+    /**
+     *  Gets the number of threads waiting for the record when the
+     *  statistics were taken.
+     *
+     *@return    the length of the record's wait queue.
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+
+    /**
+     *  Gets the most threads ever waiting for the record at once.
+     *
+     *@return    the longest length of the record's wait queue.
+     */
+    public int getMaximumQueueDepth() {
+        return maximumQueueDepth;
+    }
+
+
+    /**
+     *  Converts the statistics to a string representation.
+     *
+     *@return    a string representation of the statistics.
+     */
+    public String toString() {
+        return "record " + recNo + " : " + lockCount + " locks, " + waitCount
+                + " waited " + getTotalWaitTime() + " ms (longest "
+                + getMaximumWaitTime() + " ms), " + abandonCount
+                + " gave up, queue " + queueDepth + " (longest "
+                + maximumQueueDepth + "), held " + getAverageHoldTime()
+                + " ms on average";
+    }
+}
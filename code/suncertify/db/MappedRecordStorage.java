@@ -0,0 +1,131 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ *  A <code>RecordStorage</code> that maps the database file into memory once
+ *  with <code>FileChannel.map</code>, and reads and writes record fields
+ *  directly in the mapped buffer. The file is held open for the lifetime of
+ *  the storage object, so no system calls are made to update a record.
+ *  <p>
+ *  Records appended to the file are written through the channel, since
+ *  mapping beyond the end of the file would pad the file with zero bytes.
+ *  The mapping is grown to cover them only once they fill
+ *  <code>GROWTH_STEP</code> bytes, rather than for every record, since a
+ *  mapping is only released when it is garbage collected.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class MappedRecordStorage implements RecordStorage {
+
+    /**
+     *  The number of bytes appended beyond the mapping before the mapping is
+     *  grown to cover them.
+     */
+    private static final long GROWTH_STEP = 1024 * 1024;
+
+    /**
+     *  The database file, held open while the storage is in use.
+     */
+    private RandomAccessFile dataFile;
+
+    /**
+     *  The channel over the database file.
+     */
+    private FileChannel channel;
+
+    /**
+     *  The buffer the database file is mapped into.
+     */
+    private MappedByteBuffer buffer;
+
+
+    /**
+     *  Constructor for the MappedRecordStorage object. Opens the database
+     *  file and maps its full length.
+     *
+     *@param  filePath         the path of the database file.
+     *@throws  IOException     thrown if the file could not be opened or
+     *      mapped.
+     */
+    MappedRecordStorage(String filePath) throws IOException {
+        dataFile = new RandomAccessFile(filePath, "rw");
+        channel = dataFile.getChannel();
+        map(channel.size());
+    }
+
+
+    /**
+     *  Writes bytes to the mapped file, or through the channel if they lie
+     *  beyond the mapping, growing the mapping once the file has grown
+     *  <code>GROWTH_STEP</code> bytes beyond it.
+     *
+     *@param  position         the file offset to write to.
+     *@param  data             the bytes to write.
+     *@throws  IOException     thrown if the bytes could not be written, or
+     *      the mapping could not be grown.
+     */
+    public synchronized void write(long position, byte[] data)
+             throws IOException {
+        if (position < 0) {
+            throw new IOException("Attempted to write before start of file");
+        }
+        if (position + data.length <= buffer.capacity()) {
+            buffer.position((int) position);
+            buffer.put(data);
+            return;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(data);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes, position + bytes.position());
+        }
+        long size = channel.size();
+        if (size - buffer.capacity() >= GROWTH_STEP) {
+            map(size);
+        }
+    }
+
+
+    /**
+     *  Forces all changes made to the mapped buffer, and all bytes written
+     *  beyond it, to the disk.
+     *
+     *@throws  IOException     thrown if the file could not be forced.
+     */
+    public synchronized void force() throws IOException {
+        buffer.force();
+        channel.force(false);
+    }
+
+
+    /**
+     *  Flushes the mapped buffer to disk and closes the file.
+     *
+     *@throws  IOException     thrown if the file could not be closed.
+     */
+    public synchronized void close() throws IOException {
+        force();
+        channel.close();
+        dataFile.close();
+    }
+
+
+    /**
+     *  Maps the file from its start to the specified length, which is no
+     *  more than the length of the file.
+     *
+     *@param  length           the number of bytes to map.
+     *@throws  IOException     thrown if the file could not be mapped.
+     */
+    private void map(long length) throws IOException {
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("Database file is too large to map");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+    }
+}
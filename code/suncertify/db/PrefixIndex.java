@@ -0,0 +1,342 @@
+package suncertify.db;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  A sorted index over one field of the contractor table, answering prefix
+ *  searches in time proportional to the number of matches. The index holds
+ *  only record numbers, in an array sorted by the lower case bytes of the
+ *  field, which are read from the table when entries are compared. Deleted
+ *  records are not held in the index.
+ *  <p>
+ *  Searches read the array without locking. Changes are made to a copy of
+ *  the array, which then replaces the original, so a search always sees a
+ *  complete, sorted array.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class PrefixIndex {
+
+    /**
+     *  The table holding the indexed records.
+     */
+    private ContractorTable table;
+
+    /**
+     *  The indexed field.
+     */
+    private int field;
+
+    /**
+     *  The indexed record numbers, sorted by field value and then by record
+     *  number.
+     */
+    private volatile int[] entries = new int[0];
+
+
+    /**
+     *  Constructor for the PrefixIndex object.
+     *
+     *@param  table  the table holding the indexed records.
+     *@param  field  the index of the field to index.
+     */
+    PrefixIndex(ContractorTable table, int field) {
+        this.table = table;
+        this.field = field;
+    }
+
+
+    /**
+     *  Replaces the contents of the index with every record in the table
+     *  which is not deleted. The field values are decoded once, and only the
+     *  distinct values are sorted; each record is then placed after the
+     *  records with lesser values, so records with equal values stay in
+     *  ascending order.
+     */
+    synchronized void build() {
+        int size = table.size();
+        Map ids = new HashMap();
+        List distinct = new ArrayList();
+        int[] live = new int[size];
+        int[] keyIds = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!table.isDeleted(i)) {
+                String key = table.getLowerField(i, field);
+                Integer id = (Integer) ids.get(key);
+                if (id == null) {
+                    id = Integer.valueOf(distinct.size());
+                    ids.put(key, id);
+                    distinct.add(key);
+                }
+                live[count] = i;
+                keyIds[count++] = id.intValue();
+            }
+        }
+        String[] keys = (String[]) distinct.toArray(new String[0]);
+        int[] order = new int[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sort(order, new int[order.length], keys, 0, order.length);
+        /* The first position of each distinct value in the sorted index. */
+        int[] starts = new int[keys.length];
+        for (int i = 0; i < count; i++) {
+            starts[keyIds[i]]++;
+        }
+        int position = 0;
+        for (int i = 0; i < order.length; i++) {
+            int values = starts[order[i]];
+            starts[order[i]] = position;
+            position += values;
+        }
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            sorted[starts[keyIds[i]]++] = live[i];
+        }
+        entries = sorted;
+    }
+
+
+    /**
+     *  Adds a record to the index.
+     *
+     *@param  recNo  the record to add.
+     */
+    synchronized void add(int recNo) {
+        int[] current = entries;
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compare(current[middle], recNo) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int[] updated = new int[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, low);
+        updated[low] = recNo;
+        System.arraycopy(current, low, updated, low + 1,
+                current.length - low);
+        entries = updated;
+    }
+
+
+    /**
+     *  Removes a record from the index. The record's field must not have
+     *  changed since it was added.
+     *
+     *@param  recNo  the record to remove.
+     */
+    synchronized void remove(int recNo) {
+        int[] current = entries;
+        int low = 0;
+        int high = current.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compare(current[middle], recNo);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                int[] updated = new int[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, middle);
+                System.arraycopy(current, middle + 1, updated, middle,
+                        current.length - middle - 1);
+                entries = updated;
+                return;
+            }
+        }
+    }
+
+
+    /**
+     *  Counts the records whose field begins with a prefix.
+     *
+     *@param  prefix  the prefix, normalized by
+     *      <code>ContractorTable.toPrefix</code>.
+     *@return         the number of matching records.
+     */
+    int count(byte[] prefix) {
+        int[] current = entries;
+        return upperBound(current, prefix) - lowerBound(current, prefix);
+    }
+
+
+    /**
+     *  Finds the records whose field begins with a prefix.
+     *
+     *@param  prefix  the prefix, normalized by
+     *      <code>ContractorTable.toPrefix</code>.
+     *@return         the matching record numbers, in field order.
+     */
+    int[] find(byte[] prefix) {
+        int[] current = entries;
+        int from = lowerBound(current, prefix);
+        int to = upperBound(current, prefix);
+        int[] matches = new int[to - from];
+        System.arraycopy(current, from, matches, 0, matches.length);
+        return matches;
+    }
+
+
+    /**
+     *  Walks the index in order of the field, collecting the records a
+     *  filter accepts until enough are found.
+     *
+     *@param  filter      the test a record must pass.
+     *@param  limit       the maximum number of records to collect.
+     *@param  descending  true to walk from the end of the index.
+     *@param  budget      the maximum number of entries to walk.
+     *@return             the accepted records, in the order walked, or null
+     *      if the budget ran out before enough records were found.
+     */
+    int[] select(RecordFilter filter, int limit, boolean descending,
+            int budget) {
+        int[] current = entries;
+        int[] selected = new int[Math.min(limit, current.length)];
+        int found = 0;
+        for (int i = 0; i < current.length && found < selected.length; i++) {
+            if (i == budget) {
+                return null;
+            }
+            int recNo = current[descending ? current.length - 1 - i : i];
+            if (filter.accepts(recNo)) {
+                selected[found++] = recNo;
+            }
+        }
+        int[] results = new int[found];
+        System.arraycopy(selected, 0, results, 0, found);
+        return results;
+    }
+
+
+    /**
+     *  Finds the first entry whose field is not less than the prefix.
+     *
+     *@param  current  the entries to search.
+     *@param  prefix   the normalized prefix.
+     *@return          the position of the first possible match.
+     */
+    private int lowerBound(int[] current, byte[] prefix) {
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparePrefix(current[middle], prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     *  Finds the first entry whose field is greater than every value
+     *  beginning with the prefix.
+     *
+     *@param  current  the entries to search.
+     *@param  prefix   the normalized prefix.
+     *@return          the position after the last possible match.
+     */
+    private int upperBound(int[] current, byte[] prefix) {
+        int low = 0;
+        int high = current.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (comparePrefix(current[middle], prefix) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+
+    /**
+     *  Compares the start of a record's field with a prefix.
+     *
+     *@param  recNo   the record to compare.
+     *@param  prefix  the normalized prefix.
+     *@return         a negative number, zero or a positive number as the
+     *      start of the field is less than, equal to or greater than the
+     *      prefix.
+     */
+    private int comparePrefix(int recNo, byte[] prefix) {
+        int length = Math.min(prefix.length, table.getFieldLength(field));
+        for (int i = 0; i < length; i++) {
+            int difference = table.getLowerByte(recNo, field, i)
+                    - (prefix[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        /* A prefix longer than the field sorts after it. */
+        return length - prefix.length;
+    }
+
+
+    /**
+     *  Compares the fields of two records, then their record numbers.
+     *
+     *@param  recNo  the first record.
+     *@param  other  the second record.
+     *@return        a negative number, zero or a positive number as the
+     *      first record sorts before, with or after the second.
+     */
+    private int compare(int recNo, int other) {
+        int length = table.getFieldLength(field);
+        for (int i = 0; i < length; i++) {
+            int difference = table.getLowerByte(recNo, field, i)
+                    - table.getLowerByte(other, field, i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return recNo - other;
+    }
+
+
+    /**
+     *  Sorts a range of positions by their keys with a merge sort.
+     *
+     *@param  values   the positions to sort.
+     *@param  scratch  working space at least as long as the range.
+     *@param  keys     the key of each position.
+     *@param  from     the first position of the range.
+     *@param  to       the position after the range.
+     */
+    private static void sort(int[] values, int[] scratch, String[] keys,
+            int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(values, scratch, keys, from, middle);
+        sort(values, scratch, keys, middle, to);
+        if (keys[values[middle - 1]].compareTo(keys[values[middle]]) <= 0) {
+            return;
+        }
+        System.arraycopy(values, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && keys[scratch[left]]
+                    .compareTo(keys[scratch[right]]) <= 0)) {
+                values[i] = scratch[left++];
+            } else {
+                values[i] = scratch[right++];
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package suncertify.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ *  Compares the bytes of a field, held in the table of records, with a
+ *  prefix, ignoring case. <code>ContractorTable</code> compares a byte at a
+ *  time unless an implementation using the incubating Vector API, which is
+ *  built and run only when the <code>jdk.incubator.vector</code> module is
+ *  present, can be loaded.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ *@see        suncertify.db.ContractorTable#startsWith(int, int, byte[])
+ */
+interface PrefixMatcher {
+
+    /**
+     *  Tests whether the bytes at a position of the table begin with a
+     *  prefix, ignoring the case of ASCII letters.
+     *
+     *@param  records  the buffer holding the records.
+     *@param  start    the position of the field in the buffer.
+     *@param  prefix   the prefix, normalized by
+     *      <code>ContractorTable.toPrefix</code>, no longer than the field.
+     *@return          true if the field begins with the prefix.
+     */
+    public boolean startsWith(ByteBuffer records, int start, byte[] prefix);
+}
@@ -0,0 +1,449 @@
+package suncertify.db;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ *  A search over the fields of the contractor table. Each field may carry
+ *  one condition: a prefix, an exact value, or, for the size and rate, an
+ *  inclusive range. A query may also require contractors to be booked or
+ *  unbooked. A record matches if it is live and meets every condition.
+ *  Text is compared without regard to case.
+ *  <p>
+ *  The contractors found may be ordered by name, size or rate, and limited
+ *  to the first few in that order, so that only the contractors wanted
+ *  leave the server.
+ *  <p>
+ *  A query is run by <code>Data.find</code>, which compiles a plan for each
+ *  shape of query - the kind of condition on each field - once, and runs
+ *  the plan again for every later query of the same shape with that query's
+ *  values.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+public final class Query implements Serializable {
+    /**
+     * Guarantee a consistent serialVersionUID value across different
+     * java compiler implementations.
+     */
+    static final long serialVersionUID = 1L;
+
+    /**
+     *  Index of the name field.
+     */
+    public static final int NAME = ContractorTable.NAME;
+
+    /**
+     *  Index of the location field.
+     */
+    public static final int LOCATION = ContractorTable.LOCATION;
+
+    /**
+     *  Index of the specialities field.
+     */
+    public static final int SPECIALITIES = ContractorTable.SPECIALITIES;
+
+    /**
+     *  Index of the size field.
+     */
+    public static final int SIZE = ContractorTable.SIZE;
+
+    /**
+     *  Index of the rate field.
+     */
+    public static final int RATE = ContractorTable.RATE;
+
+    /**
+     *  Index of the owner field.
+     */
+    public static final int OWNER = ContractorTable.OWNER;
+
+    /**
+     *  The number of fields a query may search.
+     */
+    static final int FIELD_COUNT = 6;
+
+    /**
+     *  Condition matching any value of a field.
+     */
+    static final char ANY = '-';
+
+    /**
+     *  Condition matching values of a field which begin with a prefix.
+     */
+    static final char PREFIX = 'p';
+
+    /**
+     *  Condition matching values of a field equal to a value.
+     */
+    static final char EXACT = 'e';
+
+    /**
+     *  Condition matching numeric values of a field within a range.
+     */
+    static final char RANGE = 'r';
+
+    /**
+     *  Booking condition matching only booked contractors.
+     */
+    static final char BOOKED = 'b';
+
+    /**
+     *  Booking condition matching only unbooked contractors.
+     */
+    static final char UNBOOKED = 'u';
+
+    /**
+     *  The condition on each field.
+     */
+    private char[] conditions = new char[FIELD_COUNT];
+
+    /**
+     *  The prefix or exact value of each field with such a condition.
+     */
+    private String[] values = new String[FIELD_COUNT];
+
+    /**
+     *  The lowest value of each field with a range condition.
+     */
+    private int[] minimums = new int[FIELD_COUNT];
+
+    /**
+     *  The highest value of each field with a range condition.
+     */
+    private int[] maximums = new int[FIELD_COUNT];
+
+    /**
+     *  The booking condition, or <code>ANY</code>.
+     */
+    private char booking = ANY;
+
+    /**
+     *  The field the results are ordered by, or -1 to order them by record
+     *  number.
+     */
+    private int orderField = -1;
+
+    /**
+     *  Whether the results are in descending order.
+     */
+    private boolean descending = false;
+
+    /**
+     *  The maximum number of results.
+     */
+    private int limit = Integer.MAX_VALUE;
+
+
+    /**
+     *  Constructor for a query which matches every live contractor.
+     */
+    public Query() {
+        Arrays.fill(conditions, ANY);
+    }
+
+
+    /**
+     *  Requires a field to begin with a prefix. The prefix is matched
+     *  literally, so characters such as "(" have no special meaning. A null
+     *  or empty prefix removes the condition on the field.
+     *
+     *@param  field   the index of the field.
+     *@param  prefix  the prefix to match.
+     */
+    public void setPrefix(int field, String prefix) {
+        checkField(field);
+        if (prefix == null || prefix.length() == 0) {
+            clear(field);
+        } else {
+            conditions[field] = PREFIX;
+            values[field] = prefix;
+        }
+    }
+
+
+    /**
+     *  Requires a field to equal a value, ignoring surrounding spaces. The
+     *  specialities field takes a comma separated list of specialities, each
+     *  of which a contractor must offer. A size or rate which is not a
+     *  number matches nothing, and a blank owner matches unbooked
+     *  contractors. A null value removes the condition on the field.
+     *
+     *@param  field  the index of the field.
+     *@param  value  the value to match.
+     */
+    public void setExact(int field, String value) {
+        checkField(field);
+        if (value == null
+                || (field == SPECIALITIES
+                    && TokenIndex.tokenize(value).length == 0)) {
+            clear(field);
+        } else if (field == OWNER && value.trim().length() == 0) {
+            clear(field);
+            booking = UNBOOKED;
+        } else {
+            conditions[field] = EXACT;
+            values[field] = value;
+        }
+    }
+
+
+    /**
+     *  Requires the size or rate to lie within an inclusive range. Rates are
+     *  given as a whole number of cents, so "under $60.00 an hour" is a range
+     *  of 0 to 5999.
+     *
+     *@param  field                      the index of the size or rate field.
+     *@param  min                        the lowest value to match.
+     *@param  max                        the highest value to match.
+     *@throws  IllegalArgumentException  thrown if the field is not numeric.
+     */
+    public void setRange(int field, int min, int max) {
+        if (field != SIZE && field != RATE) {
+            throw new IllegalArgumentException("Not a numeric field : "
+                    + field);
+        }
+        conditions[field] = RANGE;
+        values[field] = null;
+        minimums[field] = min;
+        maximums[field] = max;
+    }
+
+
+    /**
+     *  Requires contractors to be booked, or to be unbooked.
+     *
+     *@param  booked  true to match only booked contractors, false to match
+     *      only unbooked contractors.
+     */
+    public void setBooked(boolean booked) {
+        booking = booked ? BOOKED : UNBOOKED;
+    }
+
+
+    /**
+     *  Orders the results by the name, size or rate field. Names are
+     *  ordered without regard to case, and contractors with equal values by
+     *  record number; a descending order reverses both.
+     *
+     *@param  field                      the index of the name, size or rate
+     *      field.
+     *@param  descending                 true to order from the highest value
+     *      down.
+     *@throws  IllegalArgumentException  thrown if the results cannot be
+     *      ordered by the field.
+     */
+    public void setOrder(int field, boolean descending) {
+        if (field != NAME && field != SIZE && field != RATE) {
+            throw new IllegalArgumentException("Cannot order by field : "
+                    + field);
+        }
+        this.orderField = field;
+        this.descending = descending;
+    }
+
+
+    /**
+     *  Limits the number of results. With an order, the results are the
+     *  first contractors in that order; otherwise they are the matching
+     *  contractors with the lowest record numbers.
+     *
+     *@param  limit                      the maximum number of results.
+     *@throws  IllegalArgumentException  thrown if the limit is negative.
+     */
+    public void setLimit(int limit) {
+        if (limit < 0) {
+            throw new IllegalArgumentException("Invalid limit : " + limit);
+        }
+        this.limit = limit;
+    }
+
+
+    /**
+     *  Removes the condition on a field.
+     *
+     *@param  field  the index of the field.
+     */
+    public void clear(int field) {
+        checkField(field);
+        conditions[field] = ANY;
+        values[field] = null;
+    }
+
+
+    /**
+     *  Gets a key identifying the records the query matches. Queries which
+     *  differ only in the case of their values, or in the order of their
+     *  specialities, have the same key. Values are lowered the way the records
+     *  are matched, so the key does not depend on the default locale.
+     *
+     *@return    the key of the query.
+     */
+    public String getKey() {
+        StringBuffer key = new StringBuffer(getShape());
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            key.append('\0');
+            if (conditions[field] == PREFIX) {
+                key.append(lower(values[field]));
+            } else if (conditions[field] == EXACT && field == SPECIALITIES) {
+                String[] tokens = TokenIndex.tokenize(values[field]);
+                Arrays.sort(tokens);
+                for (int i = 0; i < tokens.length; i++) {
+                    key.append(tokens[i]).append(',');
+                }
+            } else if (conditions[field] == EXACT && field == OWNER) {
+                key.append(TokenIndex.normalize(values[field]));
+            } else if (conditions[field] == EXACT) {
+                key.append(lower(values[field].trim()));
+            } else if (conditions[field] == RANGE) {
+                key.append(minimums[field]).append(',')
+                        .append(maximums[field]);
+            }
+        }
+        key.append('\0').append(orderField).append(descending ? 'd' : 'a');
+        key.append(limit);
+        return key.toString();
+    }
+
+
+    /**
+     *  Lowers a value with the table used to match names and locations. A
+     *  value which matches no record is kept as it is.
+     *
+     *@param  value  the value.
+     *@return        the lowered value.
+     */
+    private static String lower(String value) {
+        byte[] prefix = ContractorTable.toPrefix(value);
+        if (prefix == null) {
+            return value;
+        }
+        char[] chars = new char[prefix.length];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (prefix[i] & 0xff);
+        }
+        return new String(chars);
+    }
+
+
+    /**
+     *  Converts the query to a string representation.
+     *
+     *@return    a string representation of the query.
+     */
+    public String toString() {
+        return getKey().replace('\0', '|');
+    }
+
+
+    /**
+     *  Gets the shape of the query: the condition on each field followed by
+     *  the booking condition. Queries of the same shape share a plan.
+     *
+     *@return    the shape of the query.
+     */
+    String getShape() {
+        return new String(conditions) + booking;
+    }
+
+
+    /**
+     *  Gets the condition on a field.
+     *
+     *@param  field  the index of the field.
+     *@return        one of <code>ANY</code>, <code>PREFIX</code>,
+     *      <code>EXACT</code> or <code>RANGE</code>.
+     */
+    char getCondition(int field) {
+        return conditions[field];
+    }
+
+
+    /**
+     *  Gets the booking condition.
+     *
+     *@return    one of <code>ANY</code>, <code>BOOKED</code> or
+     *      <code>UNBOOKED</code>.
+     */
+    char getBooking() {
+        return booking;
+    }
+
+
+    /**
+     *  Gets the field the results are ordered by.
+     *
+     *@return    the index of the field, or -1 if the results are ordered by
+     *      record number.
+     */
+    int getOrderField() {
+        return orderField;
+    }
+
+
+    /**
+     *  Gets whether the results are in descending order.
+     *
+     *@return    true if the order is descending.
+     */
+    boolean isDescending() {
+        return descending;
+    }
+
+
+    /**
+     *  Gets the maximum number of results.
+     *
+     *@return    the limit.
+     */
+    int getLimit() {
+        return limit;
+    }
+
+
+    /**
+     *  Gets the prefix or exact value of a field.
+     *
+     *@param  field  the index of the field.
+     *@return        the value, as given.
+     */
+    String getValue(int field) {
+        return values[field];
+    }
+
+
+    /**
+     *  Gets the lowest value of a field with a range condition.
+     *
+     *@param  field  the index of the field.
+     *@return        the lowest value to match.
+     */
+    int getMinimum(int field) {
+        return minimums[field];
+    }
+
+
+    /**
+     *  Gets the highest value of a field with a range condition.
+     *
+     *@param  field  the index of the field.
+     *@return        the highest value to match.
+     */
+    int getMaximum(int field) {
+        return maximums[field];
+    }
+
+
+    /**
+     *  Checks that a field index is valid.
+     *
+     *@param  field                      the index of the field.
+     *@throws  IllegalArgumentException  thrown if there is no such field.
+     */
+    private static void checkField(int field) {
+        if (field < 0 || field >= FIELD_COUNT) {
+            throw new IllegalArgumentException("Invalid field : " + field);
+        }
+    }
+}
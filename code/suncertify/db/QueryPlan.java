@@ -0,0 +1,199 @@
+package suncertify.db;
+
+/**
+ *  The compiled plan of a shape of query: the steps by which a record is
+ *  tested against each condition of the query, and which of those steps can
+ *  be answered from an index. A plan holds no values, so it is compiled
+ *  once for a shape and run for every query of that shape with the values
+ *  of the query.
+ *  <p>
+ *  The steps are ordered cheapest first, so a record failing a cheap test
+ *  is not put to a costly one.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class QueryPlan {
+
+    /**
+     *  Step testing the record is booked.
+     */
+    static final int BOOKED = 0;
+
+    /**
+     *  Step testing the record is not booked.
+     */
+    static final int UNBOOKED = 1;
+
+    /**
+     *  Step testing the numeric value of a field lies within a range.
+     */
+    static final int RANGE = 2;
+
+    /**
+     *  Step testing the record appears in each of a set of posting lists.
+     */
+    static final int TOKENS = 3;
+
+    /**
+     *  Step testing a field begins with a prefix.
+     */
+    static final int PREFIX = 4;
+
+    /**
+     *  Step testing a field equals a value.
+     */
+    static final int EXACT = 5;
+
+    /**
+     *  The field tested by each step.
+     */
+    private int[] fields;
+
+    /**
+     *  The test made by each step.
+     */
+    private int[] operations;
+
+    /**
+     *  Whether the records passing each step can be looked up in an index.
+     */
+    private boolean[] indexed;
+
+    /**
+     *  The number of steps.
+     */
+    private int count = 0;
+
+
+    /**
+     *  Compiles the plan of the shape of a query.
+     *
+     *@param  query  a query of the shape to compile.
+     */
+    QueryPlan(Query query) {
+        fields = new int[Query.FIELD_COUNT + 1];
+        operations = new int[fields.length];
+        indexed = new boolean[fields.length];
+        if (query.getBooking() == Query.BOOKED) {
+            addStep(ContractorTable.OWNER, BOOKED, true);
+        } else if (query.getBooking() == Query.UNBOOKED) {
+            addStep(ContractorTable.OWNER, UNBOOKED, true);
+        }
+        for (int operation = RANGE; operation <= EXACT; operation++) {
+            for (int field = 0; field < Query.FIELD_COUNT; field++) {
+                if (compile(query.getCondition(field), field) == operation) {
+                    addStep(field, operation, isIndexed(field, operation));
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Gets the number of steps in the plan.
+     *
+     *@return    the number of steps.
+     */
+    int getStepCount() {
+        return count;
+    }
+
+
+    /**
+     *  Gets the field tested by a step.
+     *
+     *@param  step  the position of the step in the plan.
+     *@return       the index of the field.
+     */
+    int getField(int step) {
+        return fields[step];
+    }
+
+
+    /**
+     *  Gets the test made by a step.
+     *
+     *@param  step  the position of the step in the plan.
+     *@return       the operation of the step.
+     */
+    int getOperation(int step) {
+        return operations[step];
+    }
+
+
+    /**
+     *  Gets whether the records passing a step can be looked up in an
+     *  index.
+     *
+     *@param  step  the position of the step in the plan.
+     *@return       true if the step is answered by an index.
+     */
+    boolean isIndexed(int step) {
+        return indexed[step];
+    }
+
+
+    /**
+     *  Chooses the test by which a condition on a field is checked. An exact
+     *  size or rate is a range of one value, and an exact speciality or
+     *  owner is a token of the field.
+     *
+     *@param  condition  the condition of the query on the field.
+     *@param  field      the index of the field.
+     *@return            the operation of the step, or -1 if the field is not
+     *      tested.
+     */
+    private static int compile(char condition, int field) {
+        switch (condition) {
+            case Query.PREFIX:
+                return PREFIX;
+            case Query.RANGE:
+                return RANGE;
+            case Query.EXACT:
+                if (field == ContractorTable.SIZE
+                        || field == ContractorTable.RATE) {
+                    return RANGE;
+                } else if (field == ContractorTable.SPECIALITIES
+                        || field == ContractorTable.OWNER) {
+                    return TOKENS;
+                }
+                return EXACT;
+            default:
+                return -1;
+        }
+    }
+
+
+    /**
+     *  Gets whether a test on a field can be answered by an index. Names and
+     *  locations have prefix indexes, sizes and rates range indexes, and
+     *  specialities and owners token indexes.
+     *
+     *@param  field      the index of the field.
+     *@param  operation  the test made on the field.
+     *@return            true if an index answers the test.
+     */
+    private static boolean isIndexed(int field, int operation) {
+        if (operation == PREFIX || operation == EXACT) {
+            return field == ContractorTable.NAME
+                    || field == ContractorTable.LOCATION;
+        }
+        return operation == RANGE || operation == TOKENS;
+    }
+
+
+    /**
+     *  Appends a step to the plan.
+     *
+     *@param  field      the field tested.
+     *@param  operation  the test made.
+     *@param  isIndexed  whether the step is answered by an index.
+     */
+    private void addStep(int field, int operation, boolean isIndexed) {
+        fields[count] = field;
+        operations[count] = operation;
+        indexed[count] = isIndexed;
+        count++;
+    }
+}
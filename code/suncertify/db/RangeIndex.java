@@ -0,0 +1,235 @@
+package suncertify.db;
+
+import java.util.Arrays;
+
+/**
+ *  A sorted index over a numeric field of the contractor table, answering
+ *  range searches in time proportional to the number of matches. Each entry
+ *  packs the numeric value of the field, as given by
+ *  <code>ContractorTable.getNumber</code>, into the high half of a
+ *  <code>long</code> and the record number into the low half, so the
+ *  entries sort by value and then by record number as plain numbers.
+ *  Deleted records are not held in the index.
+ *  <p>
+ *  Searches read the array without locking. Changes are made to a copy of
+ *  the array, which then replaces the original, so a search always sees a
+ *  complete, sorted array.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class RangeIndex {
+
+    /**
+     *  The mask selecting the record number from an entry.
+     */
+    private static final long RECORD_MASK = 0xffffffffL;
+
+    /**
+     *  The table holding the indexed records.
+     */
+    private ContractorTable table;
+
+    /**
+     *  The indexed field.
+     */
+    private int field;
+
+    /**
+     *  The entries of the index, in ascending order.
+     */
+    private volatile long[] entries = new long[0];
+
+
+    /**
+     *  Constructor for the RangeIndex object.
+     *
+     *@param  table  the table holding the indexed records.
+     *@param  field  the index of the field to index.
+     */
+    RangeIndex(ContractorTable table, int field) {
+        this.table = table;
+        this.field = field;
+    }
+
+
+    /**
+     *  Replaces the contents of the index with every record in the table
+     *  which is not deleted.
+     */
+    synchronized void build() {
+        int size = table.size();
+        long[] live = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (!table.isDeleted(i)) {
+                live[count++] = entry(i);
+            }
+        }
+        long[] sorted = new long[count];
+        System.arraycopy(live, 0, sorted, 0, count);
+        Arrays.sort(sorted);
+        entries = sorted;
+    }
+
+
+    /**
+     *  Adds a record to the index.
+     *
+     *@param  recNo  the record to add.
+     */
+    synchronized void add(int recNo) {
+        long[] current = entries;
+        int position = Arrays.binarySearch(current, entry(recNo));
+        if (position < 0) {
+            position = -(position + 1);
+            long[] updated = new long[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            updated[position] = entry(recNo);
+            System.arraycopy(current, position, updated, position + 1,
+                    current.length - position);
+            entries = updated;
+        }
+    }
+
+
+    /**
+     *  Removes a record from the index. The record's field must not have
+     *  changed since it was added.
+     *
+     *@param  recNo  the record to remove.
+     */
+    synchronized void remove(int recNo) {
+        long[] current = entries;
+        int position = Arrays.binarySearch(current, entry(recNo));
+        if (position >= 0) {
+            long[] updated = new long[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, position);
+            System.arraycopy(current, position + 1, updated, position,
+                    current.length - position - 1);
+            entries = updated;
+        }
+    }
+
+
+    /**
+     *  Counts the records whose value lies within a range.
+     *
+     *@param  min  the lowest value to match.
+     *@param  max  the highest value to match.
+     *@return      the number of matching records.
+     */
+    int count(int min, int max) {
+        if (min > max) {
+            return 0;
+        }
+        long[] current = entries;
+        return upperBound(current, max) - lowerBound(current, min);
+    }
+
+
+    /**
+     *  Finds the records whose value lies within a range.
+     *
+     *@param  min  the lowest value to match.
+     *@param  max  the highest value to match.
+     *@return      the matching record numbers, in order of value.
+     */
+    int[] find(int min, int max) {
+        if (min > max) {
+            return new int[0];
+        }
+        long[] current = entries;
+        int from = lowerBound(current, min);
+        int to = upperBound(current, max);
+        int[] matches = new int[to - from];
+        for (int i = 0; i < matches.length; i++) {
+            matches[i] = (int) (current[from + i] & RECORD_MASK);
+        }
+        return matches;
+    }
+
+
+    /**
+     *  Walks the index in order of value, collecting the records a filter
+     *  accepts until enough are found.
+     *
+     *@param  filter      the test a record must pass.
+     *@param  limit       the maximum number of records to collect.
+     *@param  descending  true to walk from the highest value down.
+     *@param  budget      the maximum number of entries to walk.
+     *@return             the accepted records, in the order walked, or null
+     *      if the budget ran out before enough records were found.
+     */
+    int[] select(RecordFilter filter, int limit, boolean descending,
+            int budget) {
+        long[] current = entries;
+        int[] selected = new int[Math.min(limit, current.length)];
+        int found = 0;
+        for (int i = 0; i < current.length && found < selected.length; i++) {
+            if (i == budget) {
+                return null;
+            }
+            int recNo = (int) (current[descending ? current.length - 1 - i
+                    : i] & RECORD_MASK);
+            if (filter.accepts(recNo)) {
+                selected[found++] = recNo;
+            }
+        }
+        int[] results = new int[found];
+        System.arraycopy(selected, 0, results, 0, found);
+        return results;
+    }
+
+
+    /**
+     *  Tests whether the value of a record's field lies within a range.
+     *
+     *@param  recNo  the record to test.
+     *@param  min    the lowest value to match.
+     *@param  max    the highest value to match.
+     *@return        true if the value lies within the range.
+     */
+    boolean matches(int recNo, int min, int max) {
+        int value = table.getNumber(recNo, field);
+        return value >= min && value <= max;
+    }
+
+
+    /**
+     *  Builds the index entry of a record.
+     *
+     *@param  recNo  the record.
+     *@return        the entry packing the record's value and number.
+     */
+    private long entry(int recNo) {
+        return ((long) table.getNumber(recNo, field) << 32) | recNo;
+    }
+
+
+    /**
+     *  Finds the first entry whose value is not less than a bound.
+     *
+     *@param  current  the entries to search.
+     *@param  min      the bound.
+     *@return          the position of the first possible match.
+     */
+    private static int lowerBound(long[] current, int min) {
+        int position = Arrays.binarySearch(current, (long) min << 32);
+        return position < 0 ? -(position + 1) : position;
+    }
+
+
+    /**
+     *  Finds the first entry whose value is greater than a bound.
+     *
+     *@param  current  the entries to search.
+     *@param  max      the bound.
+     *@return          the position after the last possible match.
+     */
+    private static int upperBound(long[] current, int max) {
+        int position = Arrays.binarySearch(current,
+                ((long) max << 32) | RECORD_MASK);
+        return position < 0 ? -(position + 1) : position + 1;
+    }
+}
@@ -0,0 +1,145 @@
+package suncertify.db;
+
+/**
+ *  A set of record numbers held as a bitmap, one bit per record in the
+ *  table, so that testing a record is a single shift and mask and listing
+ *  the set reads 64 records per word. A table of 500,000 records takes
+ *  under 64KB per bitmap.
+ *  <p>
+ *  Records are tested and listed without locking. Changes are made under
+ *  the monitor of the bitmap, and a bitmap which must grow is copied into a
+ *  larger array which then replaces the original.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class RecordBitmap {
+
+    /**
+     *  The bits of the set, 64 records to a word.
+     */
+    private volatile long[] words = new long[0];
+
+    /**
+     *  The number of records in the set.
+     */
+    private volatile int count = 0;
+
+
+    /**
+     *  Adds a record to the set.
+     *
+     *@param  recNo  the record to add.
+     */
+    synchronized void add(int recNo) {
+        int word = recNo >>> 6;
+        long[] current = words;
+        if (word >= current.length) {
+            long[] grown = new long[Math.max(word + 1, current.length * 2)];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            current = grown;
+            words = grown;
+        }
+        long mask = 1L << recNo;
+        if ((current[word] & mask) == 0) {
+            current[word] |= mask;
+            count++;
+        }
+    }
+
+
+    /**
+     *  Removes a record from the set.
+     *
+     *@param  recNo  the record to remove.
+     */
+    synchronized void remove(int recNo) {
+        int word = recNo >>> 6;
+        long[] current = words;
+        long mask = 1L << recNo;
+        if (word < current.length && (current[word] & mask) != 0) {
+            current[word] &= ~mask;
+            count--;
+        }
+    }
+
+
+    /**
+     *  Tests whether a record is in the set.
+     *
+     *@param  recNo  the record to test.
+     *@return        true if the record is in the set.
+     */
+    boolean contains(int recNo) {
+        int word = recNo >>> 6;
+        long[] current = words;
+        return word < current.length && (current[word] & (1L << recNo)) != 0;
+    }
+
+
+    /**
+     *  Gets the number of records in the set.
+     *
+     *@return    the size of the set.
+     */
+    int size() {
+        return count;
+    }
+
+
+    /**
+     *  Lists the records in the set.
+     *
+     *@return    the records, in ascending order.
+     */
+    int[] toArray() {
+        return list(null);
+    }
+
+
+    /**
+     *  Lists the records in this set which are not in another set.
+     *
+     *@param  other  the records to leave out.
+     *@return        the records in this set only, in ascending order.
+     */
+    int[] without(RecordBitmap other) {
+        return list(other);
+    }
+
+
+    /**
+     *  Lists the records in this set, leaving out those in another set.
+     *
+     *@param  other  the records to leave out, or null.
+     *@return        the records, in ascending order.
+     */
+    private int[] list(RecordBitmap other) {
+        long[] current = words;
+        long[] excluded = other == null ? new long[0] : other.words;
+        int[] records = new int[count];
+        int found = 0;
+        for (int i = 0; i < current.length; i++) {
+            long word = current[i];
+            if (i < excluded.length) {
+                word &= ~excluded[i];
+            }
+            while (word != 0) {
+                if (found == records.length) {
+                    /* The set grew while it was being listed. */
+                    int[] grown = new int[found * 2 + 64];
+                    System.arraycopy(records, 0, grown, 0, found);
+                    records = grown;
+                }
+                records[found++] = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        if (found == records.length) {
+            return records;
+        }
+        int[] results = new int[found];
+        System.arraycopy(records, 0, results, 0, found);
+        return results;
+    }
+}
@@ -0,0 +1,297 @@
+package suncertify.db;
+
+import java.nio.ByteBuffer;
+
+/**
+ *  Encodes and decodes the fields of a record according to the schema read
+ *  from the header of the database file. The offset of each field within a
+ *  record is computed once, when the codec is created, and fields are
+ *  copied straight between <code>String</code> values and record bytes
+ *  without building intermediate strings.
+ *  <p>
+ *  A record consists of a one byte deleted flag followed by each field in
+ *  schema order. Field values are stored as ASCII, padded with spaces to the
+ *  length of the field.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class RecordCodec {
+
+    /**
+     *  The length of the deleted flag at the start of each record.
+     */
+    static final int FLAG_LENGTH = 1;
+
+    /**
+     *  The flag byte written at the start of a valid record.
+     */
+    static final byte VALID = (byte) ' ';
+
+    /**
+     *  The names of the fields, in schema order.
+     */
+    private String[] names;
+
+    /**
+     *  The lengths of the fields, in schema order.
+     */
+    private int[] lengths;
+
+    /**
+     *  The offset of each field within a record, including the flag.
+     */
+    private int[] offsets;
+
+    /**
+     *  The length of a record, including the flag.
+     */
+    private int recordSize;
+
+
+    /**
+     *  Constructor for the RecordCodec object.
+     *
+     *@param  names    the names of the fields, in schema order.
+     *@param  lengths  the lengths of the fields, in schema order.
+     */
+    RecordCodec(String[] names, int[] lengths) {
+        this.names = names;
+        this.lengths = lengths;
+        this.offsets = new int[lengths.length];
+        int offset = FLAG_LENGTH;
+        for (int i = 0; i < lengths.length; i++) {
+            offsets[i] = offset;
+            offset += lengths[i];
+        }
+        this.recordSize = offset;
+    }
+
+
+    /**
+     *  Gets the number of fields in a record.
+     *
+     *@return    the number of fields.
+     */
+    int getFieldCount() {
+        return lengths.length;
+    }
+
+
+    /**
+     *  Gets the length of a record, including the deleted flag.
+     *
+     *@return    the record length in bytes.
+     */
+    int getRecordSize() {
+        return recordSize;
+    }
+
+
+    /**
+     *  Gets the offset of a field within a record.
+     *
+     *@param  field  the schema index of the field.
+     *@return        the offset of the field from the start of the record.
+     */
+    int getOffset(int field) {
+        return offsets[field];
+    }
+
+
+    /**
+     *  Gets the length of a field.
+     *
+     *@param  field  the schema index of the field.
+     *@return        the length of the field.
+     */
+    int getLength(int field) {
+        return lengths[field];
+    }
+
+
+    /**
+     *  Finds a field by name, ignoring case.
+     *
+     *@param  name  the name of the field.
+     *@return       the schema index of the field, or -1 if there is no field
+     *      with this name.
+     */
+    int indexOf(String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    /**
+     *  Encodes a complete, valid record. The value of field n is taken from
+     *  data[n]; a missing or null value leaves the field blank.
+     *
+     *@param  data  the field values, in schema order.
+     *@return       the record bytes, starting with the deleted flag.
+     */
+    byte[] encode(String[] data) {
+        byte[] record = new byte[recordSize];
+        record[0] = VALID;
+        for (int i = 0; i < lengths.length; i++) {
+            encodeValue(i < data.length ? data[i] : null, record, offsets[i],
+                    lengths[i]);
+        }
+        return record;
+    }
+
+
+    /**
+     *  Encodes a single field value.
+     *
+     *@param  field  the schema index of the field.
+     *@param  value  the value of the field.
+     *@return        the field bytes, padded to the length of the field.
+     */
+    byte[] encodeField(int field, String value) {
+        byte[] bytes = new byte[lengths[field]];
+        encodeValue(value, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+
+    /**
+     *  Decodes a field from a buffer holding a record, with its padding.
+     *
+     *@param  buffer  the buffer holding the record.
+     *@param  base    the position of the record in the buffer.
+     *@param  field   the schema index of the field.
+     *@return         the field value.
+     */
+    String decodeField(ByteBuffer buffer, int base, int field) {
+        int start = base + offsets[field];
+        char[] chars = new char[lengths[field]];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) (buffer.get(start + i) & 0xff);
+        }
+        return new String(chars);
+    }
+
+
+    /**
+     *  Parses a numeric field from a buffer holding a record, without
+     *  decoding it to a <code>String</code>. Leading and trailing spaces are
+     *  ignored.
+     *
+     *@param  buffer                   the buffer holding the record.
+     *@param  base                     the position of the record in the
+     *      buffer.
+     *@param  field                    the schema index of the field.
+     *@return                          the field value.
+     *@throws  NumberFormatException   thrown if the field is not a number,
+     *      or is too large for an <code>int</code>.
+     */
+    int decodeInt(ByteBuffer buffer, int base, int field) {
+        int start = base + offsets[field];
+        int end = start + lengths[field];
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        if (start == end) {
+            throw new NumberFormatException("Empty numeric field");
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = buffer.get(i) - '0';
+            if (digit < 0 || digit > 9
+                    || value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("Invalid numeric field : "
+                        + decodeField(buffer, base, field).trim());
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+
+    /**
+     *  Parses a currency field, such as "$45.00", from a buffer holding a
+     *  record into a whole number of cents, without decoding it to a
+     *  <code>String</code>. Leading and trailing spaces and a leading dollar
+     *  sign are ignored, and at most two decimal places are allowed.
+     *
+     *@param  buffer                   the buffer holding the record.
+     *@param  base                     the position of the record in the
+     *      buffer.
+     *@param  field                    the schema index of the field.
+     *@return                          the field value in cents.
+     *@throws  NumberFormatException   thrown if the field is not an amount,
+     *      or is too many cents for an <code>int</code>.
+     */
+    int decodeCents(ByteBuffer buffer, int base, int field) {
+        int start = base + offsets[field];
+        int end = start + lengths[field];
+        while (start < end && buffer.get(start) == ' ') {
+            start++;
+        }
+        while (end > start && buffer.get(end - 1) == ' ') {
+            end--;
+        }
+        if (start < end && buffer.get(start) == '$') {
+            start++;
+        }
+        int value = 0;
+        int digits = 0;
+        int decimals = -1;
+        for (int i = start; i < end; i++) {
+            byte b = buffer.get(i);
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9' && decimals < 2
+                    && value <= (Integer.MAX_VALUE - (b - '0')) / 10) {
+                value = value * 10 + (b - '0');
+                digits++;
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else {
+                throw new NumberFormatException("Invalid currency field : "
+                        + decodeField(buffer, base, field).trim());
+            }
+        }
+        if (digits == 0) {
+            throw new NumberFormatException("Empty currency field");
+        }
+        for (int i = Math.max(decimals, 0); i < 2; i++) {
+            if (value > Integer.MAX_VALUE / 10) {
+                throw new NumberFormatException("Invalid currency field : "
+                        + decodeField(buffer, base, field).trim());
+            }
+            value *= 10;
+        }
+        return value;
+    }
+
+
+    /**
+     *  Copies a value into a byte array as ASCII, truncating it or padding it
+     *  with spaces to the specified length.
+     *
+     *@param  value   the value to copy, or null for a blank value.
+     *@param  target  the array to copy into.
+     *@param  offset  the position in the array to copy to.
+     *@param  length  the length of the field.
+     */
+    private static void encodeValue(String value, byte[] target, int offset,
+            int length) {
+        int valueLength = value == null ? 0 : Math.min(value.length(), length);
+        for (int i = 0; i < valueLength; i++) {
+            target[offset + i] = (byte) value.charAt(i);
+        }
+        for (int i = valueLength; i < length; i++) {
+            target[offset + i] = (byte) ' ';
+        }
+    }
+}
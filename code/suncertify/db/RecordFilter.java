@@ -0,0 +1,18 @@
+package suncertify.db;
+
+/**
+ *  A test applied to records as an index is walked in order.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+interface RecordFilter {
+
+    /**
+     *  Tests whether a record is wanted.
+     *
+     *@param  recNo  the record to test.
+     *@return        true if the record is accepted.
+     */
+    boolean accepts(int recNo);
+}
@@ -0,0 +1,156 @@
+package suncertify.db;
+
+/**
+ *  The order of records by the name, size or rate field, in the same order
+ *  as the index of that field: by the lower case bytes of the name, or by
+ *  the numeric value of the size or rate, with ties broken by record number.
+ *  A descending order reverses the whole order, ties included.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class RecordOrder {
+
+    /**
+     *  The table holding the records.
+     */
+    private ContractorTable table;
+
+    /**
+     *  The field the records are ordered by.
+     */
+    private int field;
+
+    /**
+     *  Whether the order is descending.
+     */
+    private boolean descending;
+
+
+    /**
+     *  Constructor for the RecordOrder object.
+     *
+     *@param  table       the table holding the records.
+     *@param  field       the name, size or rate field.
+     *@param  descending  true to order from the highest value down.
+     */
+    RecordOrder(ContractorTable table, int field, boolean descending) {
+        this.table = table;
+        this.field = field;
+        this.descending = descending;
+    }
+
+
+    /**
+     *  Selects the first records in order from a set of records, using a
+     *  heap of record numbers which holds no more than the number of records
+     *  wanted.
+     *
+     *@param  records  the records to select from, followed by unused space.
+     *@param  count    the number of records to select from.
+     *@param  limit    the maximum number of records to select.
+     *@return          the first records in order.
+     */
+    long[] select(int[] records, int count, int limit) {
+        int wanted = Math.min(count, limit);
+        if (wanted == 0) {
+            return new long[0];
+        }
+        /* The root of the heap is the last of the records kept so far. */
+        int[] heap = new int[wanted];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size < wanted) {
+                heap[size] = records[i];
+                siftUp(heap, size++);
+            } else if (compare(records[i], heap[0]) < 0) {
+                heap[0] = records[i];
+                siftDown(heap, 0, size);
+            }
+        }
+        /* Take the records off the heap, the last first. */
+        long[] results = new long[size];
+        for (int i = size - 1; i >= 0; i--) {
+            results[i] = heap[0];
+            heap[0] = heap[i];
+            siftDown(heap, 0, i);
+        }
+        return results;
+    }
+
+
+    /**
+     *  Moves a record up the heap until its parent comes after it.
+     *
+     *@param  heap      the heap.
+     *@param  position  the position of the record.
+     */
+    private void siftUp(int[] heap, int position) {
+        int recNo = heap[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (compare(recNo, heap[parent]) <= 0) {
+                break;
+            }
+            heap[position] = heap[parent];
+            position = parent;
+        }
+        heap[position] = recNo;
+    }
+
+
+    /**
+     *  Moves a record down the heap until it comes after both its children.
+     *
+     *@param  heap      the heap.
+     *@param  position  the position of the record.
+     *@param  size      the number of records in the heap.
+     */
+    private void siftDown(int[] heap, int position, int size) {
+        int recNo = heap[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && compare(heap[child + 1], heap[child]) > 0) {
+                child++;
+            }
+            if (compare(heap[child], recNo) <= 0) {
+                break;
+            }
+            heap[position] = heap[child];
+            position = child;
+        }
+        heap[position] = recNo;
+    }
+
+
+    /**
+     *  Compares two records by number.
+     *
+     *@param  recNo  the first record.
+     *@param  other  the second record.
+     *@return        a negative number, zero or a positive number as the
+     *      first record comes before, is, or comes after the second.
+     */
+    private int compare(int recNo, int other) {
+        int difference = 0;
+        if (field == ContractorTable.NAME) {
+            int length = table.getFieldLength(field);
+            for (int i = 0; i < length && difference == 0; i++) {
+                difference = table.getLowerByte(recNo, field, i)
+                        - table.getLowerByte(other, field, i);
+            }
+        } else {
+            int value = table.getNumber(recNo, field);
+            int otherValue = table.getNumber(other, field);
+            difference = value < otherValue ? -1
+                    : (value > otherValue ? 1 : 0);
+        }
+        if (difference == 0) {
+            difference = recNo - other;
+        }
+        return descending ? -difference : difference;
+    }
+}
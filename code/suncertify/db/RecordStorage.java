@@ -0,0 +1,41 @@
+package suncertify.db;
+
+import java.io.IOException;
+
+/**
+ *  An interface implemented by classes that provide raw byte level access to
+ *  the database file on behalf of the <code>Data</code> class. Positions are
+ *  absolute byte offsets from the start of the file.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ *@see        suncertify.db.Data
+ */
+interface RecordStorage {
+
+    /**
+     *  Writes bytes to the file, starting at the specified position. Writing
+     *  at the end of the file extends it.
+     *
+     *@param  position         the file offset to write to.
+     *@param  data             the bytes to write.
+     *@throws  IOException     thrown if the bytes could not be written.
+     */
+    public void write(long position, byte[] data) throws IOException;
+
+
+    /**
+     *  Forces all writes made so far to the disk.
+     *
+     *@throws  IOException     thrown if the file could not be forced.
+     */
+    public void force() throws IOException;
+
+
+    /**
+     *  Releases any resources held on the file.
+     *
+     *@throws  IOException     thrown if the file could not be closed.
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,222 @@
+package suncertify.db;
+
+import java.io.Serializable;
+
+/**
+ *  The summary of one group of contractors found by an aggregation query:
+ *  the number of contractors in the group, and the lowest, highest and
+ *  average size and rate among them. Rates are in cents.
+ *  <p>
+ *  Groups are formed on a field of the contractor table, given by one of the
+ *  field constants of <code>Query</code>, or by the constants of this class.
+ *  A contractor offering several specialities is counted in the group of
+ *  each speciality.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ *@see        suncertify.db.Data#summarize(Query, int)
+ */
+public final class Summary implements Serializable {
+    /**
+     * Guarantee a consistent serialVersionUID value across different
+     * java compiler implementations.
+     */
+    static final long serialVersionUID = 1L;
+
+    /**
+     *  Grouping which puts every contractor found in a single group, with an
+     *  empty key.
+     */
+    public static final int ALL = -1;
+
+    /**
+     *  Grouping by booking state, into the groups "booked" and "unbooked".
+     */
+    public static final int BOOKING = Query.FIELD_COUNT;
+
+    /**
+     *  The key of the group.
+     */
+    private String key;
+
+    /**
+     *  The number the groups are ordered by before their keys, such as the
+     *  value of a size or rate group.
+     */
+    private long order;
+
+    /**
+     *  The number of contractors in the group.
+     */
+    private int count = 0;
+
+    /**
+     *  The lowest size in the group.
+     */
+    private int minimumSize = Integer.MAX_VALUE;
+
+    /**
+     *  The highest size in the group.
+     */
+    private int maximumSize = Integer.MIN_VALUE;
+
+    /**
+     *  The total of the sizes in the group.
+     */
+    private long totalSize = 0;
+
+    /**
+     *  The lowest rate in the group.
+     */
+    private int minimumRate = Integer.MAX_VALUE;
+
+    /**
+     *  The highest rate in the group.
+     */
+    private int maximumRate = Integer.MIN_VALUE;
+
+    /**
+     *  The total of the rates in the group.
+     */
+    private long totalRate = 0;
+
+
+    /**
+     *  Constructor for an empty Summary.
+     *
+     *@param  key    the key of the group.
+     *@param  order  the number the group is ordered by before its key.
+     */
+    Summary(String key, long order) {
+        this.key = key;
+        this.order = order;
+    }
+
+
+    /**
+     *  Adds a contractor to the group.
+     *
+     *@param  size  the size of the contractor.
+     *@param  rate  the rate of the contractor, in cents.
+     */
+    void add(int size, int rate) {
+        count++;
+        minimumSize = Math.min(minimumSize, size);
+        maximumSize = Math.max(maximumSize, size);
+        totalSize += size;
+        minimumRate = Math.min(minimumRate, rate);
+        maximumRate = Math.max(maximumRate, rate);
+        totalRate += rate;
+    }
+
+
+    /**
+     *  Compares the order of this group with another.
+     *
+     *@param  other  the other group.
+     *@return        a negative number, zero or a positive number as this
+     *      group comes before, with, or after the other.
+     */
+    int compareTo(Summary other) {
+        if (order != other.order) {
+            return order < other.order ? -1 : 1;
+        }
+        return key.compareToIgnoreCase(other.key);
+    }
+
+
+    /**
+     *  Gets the key of the group: the value of the field the contractors
+     *  were grouped on.
+     *
+     *@return    the key of the group.
+     */
+    public String getKey() {
+        return key;
+    }
+
+
+    /**
+     *  Gets the number of contractors in the group.
+     *
+     *@return    the size of the group.
+     */
+    public int getCount() {
+        return count;
+    }
+
+
+    /**
+     *  Gets the lowest size or rate in the group.
+     *
+     *@param  field                      <code>Query.SIZE</code> or
+     *      <code>Query.RATE</code>.
+     *@return                            the lowest value, with rates in
+     *      cents.
+     *@throws  IllegalArgumentException  thrown if the field is not the size
+     *      or rate.
+     */
+    public int getMinimum(int field) {
+        return isRate(field) ? minimumRate : minimumSize;
+    }
+
+
+    /**
+     *  Gets the highest size or rate in the group.
+     *
+     *@param  field                      <code>Query.SIZE</code> or
+     *      <code>Query.RATE</code>.
+     *@return                            the highest value, with rates in
+     *      cents.
+     *@throws  IllegalArgumentException  thrown if the field is not the size
+     *      or rate.
+     */
+    public int getMaximum(int field) {
+        return isRate(field) ? maximumRate : maximumSize;
+    }
+
+
+    /**
+     *  Gets the average size or rate in the group.
+     *
+     *@param  field                      <code>Query.SIZE</code> or
+     *      <code>Query.RATE</code>.
+     *@return                            the average value, with rates in
+     *      cents.
+     *@throws  IllegalArgumentException  thrown if the field is not the size
+     *      or rate.
+     */
+    public double getAverage(int field) {
+        return (double) (isRate(field) ? totalRate : totalSize) / count;
+    }
+
+
+    /**
+     *  Converts the summary to a string representation.
+     *
+     *@return    a string representation of the summary.
+     */
+    public String toString() {
+        return key + " : " + count + " contractors, size " + minimumSize
+                + "-" + maximumSize + ", rate " + minimumRate + "-"
+                + maximumRate + " cents";
+    }
+
+
+    /**
+     *  Checks that a field is the size or rate, and tells which.
+     *
+     *@param  field                      the index of the field.
+     *@return                            true for the rate, false for the
+     *      size.
+     *@throws  IllegalArgumentException  thrown if the field is not the size
+     *      or rate.
+     */
+    private static boolean isRate(int field) {
+        if (field != Query.SIZE && field != Query.RATE) {
+            throw new IllegalArgumentException("Not a numeric field : "
+                    + field);
+        }
+        return field == Query.RATE;
+    }
+}
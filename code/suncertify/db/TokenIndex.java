@@ -0,0 +1,284 @@
+package suncertify.db;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ *  An inverted index over a field of the contractor table which holds a
+ *  comma separated list of values, such as the specialities of a contractor,
+ *  or a single value, such as the owner of a booked contractor. Each value
+ *  in the list is a token, compared without regard to case and
+ *  surrounding spaces, and each token maps to a posting list: the numbers of
+ *  the live records whose field contains the token, in ascending order.
+ *  <p>
+ *  Posting lists are never changed once they are in the index. A change
+ *  replaces the posting list of each affected token with an updated copy, so
+ *  a posting list returned by <code>find</code> may be read without locking.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class TokenIndex {
+
+    /**
+     *  The character separating the tokens of a field.
+     */
+    private static final char SEPARATOR = ',';
+
+    /**
+     *  An empty posting list, returned for tokens which are not indexed.
+     */
+    private static final int[] EMPTY = new int[0];
+
+    /**
+     *  The table holding the indexed records.
+     */
+    private ContractorTable table;
+
+    /**
+     *  The indexed field.
+     */
+    private int field;
+
+    /**
+     *  The posting list of each token, keyed by the normalized token.
+     */
+    private Map postings = new HashMap();
+
+
+    /**
+     *  Constructor for the TokenIndex object.
+     *
+     *@param  table  the table holding the indexed records.
+     *@param  field  the index of the field to index.
+     */
+    TokenIndex(ContractorTable table, int field) {
+        this.table = table;
+        this.field = field;
+    }
+
+
+    /**
+     *  Replaces the contents of the index with the tokens of every record in
+     *  the table which is not deleted.
+     */
+    synchronized void build() {
+        /* Collect each token's records in growable lists first. */
+        Map lists = new HashMap();
+        int size = table.size();
+        for (int recNo = 0; recNo < size; recNo++) {
+            if (table.isDeleted(recNo)) {
+                continue;
+            }
+            String[] tokens = tokenize(table.getField(recNo, field));
+            for (int i = 0; i < tokens.length; i++) {
+                PostingList list = (PostingList) lists.get(tokens[i]);
+                if (list == null) {
+                    list = new PostingList();
+                    lists.put(tokens[i], list);
+                }
+                list.add(recNo);
+            }
+        }
+        Map built = new HashMap();
+        Iterator it = lists.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry entry = (Map.Entry) it.next();
+            built.put(entry.getKey(),
+                    ((PostingList) entry.getValue()).toArray());
+        }
+        postings = built;
+    }
+
+
+    /**
+     *  Adds a record to the posting list of each of its tokens.
+     *
+     *@param  recNo  the record to add.
+     */
+    synchronized void add(int recNo) {
+        String[] tokens = tokenize(table.getField(recNo, field));
+        for (int i = 0; i < tokens.length; i++) {
+            int[] current = find(tokens[i]);
+            int position = binarySearch(current, recNo);
+            if (position < 0) {
+                position = -(position + 1);
+                int[] updated = new int[current.length + 1];
+                System.arraycopy(current, 0, updated, 0, position);
+                updated[position] = recNo;
+                System.arraycopy(current, position, updated, position + 1,
+                        current.length - position);
+                postings.put(tokens[i], updated);
+            }
+        }
+    }
+
+
+    /**
+     *  Removes a record from the posting list of each of its tokens. The
+     *  record's field must not have changed since it was added.
+     *
+     *@param  recNo  the record to remove.
+     */
+    synchronized void remove(int recNo) {
+        String[] tokens = tokenize(table.getField(recNo, field));
+        for (int i = 0; i < tokens.length; i++) {
+            int[] current = find(tokens[i]);
+            int position = binarySearch(current, recNo);
+            if (position >= 0) {
+                if (current.length == 1) {
+                    postings.remove(tokens[i]);
+                } else {
+                    int[] updated = new int[current.length - 1];
+                    System.arraycopy(current, 0, updated, 0, position);
+                    System.arraycopy(current, position + 1, updated, position,
+                            current.length - position - 1);
+                    postings.put(tokens[i], updated);
+                }
+            }
+        }
+    }
+
+
+    /**
+     *  Gets the posting list of a token. The returned array must not be
+     *  modified.
+     *
+     *@param  token  the token, normalized by <code>normalize</code>.
+     *@return        the live records containing the token, in ascending
+     *      order.
+     */
+    synchronized int[] find(String token) {
+        int[] list = (int[]) postings.get(token);
+        return list == null ? EMPTY : list;
+    }
+
+
+    /**
+     *  Gets the tokens held in the index.
+     *
+     *@return    the normalized tokens, each with a posting list.
+     */
+    synchronized String[] getTokens() {
+        return (String[]) postings.keySet().toArray(new String[0]);
+    }
+
+
+    /**
+     *  Normalizes a search value for lookup by <code>find</code>.
+     *
+     *@param  value  the value to normalize.
+     *@return        the value, trimmed and in lower case.
+     */
+    static String normalize(String value) {
+        return value.trim().toLowerCase();
+    }
+
+
+    /**
+     *  Searches a posting list for a record.
+     *
+     *@param  list   the posting list.
+     *@param  recNo  the record to search for.
+     *@return        the position of the record, or
+     *      <code>-(insertion point) - 1</code> if it is not in the list.
+     */
+    static int binarySearch(int[] list, int recNo) {
+        int low = 0;
+        int high = list.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (list[middle] < recNo) {
+                low = middle + 1;
+            } else if (list[middle] > recNo) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+
+    /**
+     *  Splits a field value into its normalized tokens. Empty tokens are
+     *  skipped.
+     *
+     *@param  value  the field value.
+     *@return        the tokens of the value.
+     */
+    static String[] tokenize(String value) {
+        int count = 0;
+        String[] tokens = new String[8];
+        int start = 0;
+        while (start <= value.length()) {
+            int end = value.indexOf(SEPARATOR, start);
+            if (end < 0) {
+                end = value.length();
+            }
+            String token = normalize(value.substring(start, end));
+            if (token.length() > 0) {
+                if (count == tokens.length) {
+                    String[] grown = new String[count * 2];
+                    System.arraycopy(tokens, 0, grown, 0, count);
+                    tokens = grown;
+                }
+                tokens[count++] = token;
+            }
+            start = end + 1;
+        }
+        String[] result = new String[count];
+        System.arraycopy(tokens, 0, result, 0, count);
+        return result;
+    }
+
+
+    /**
+     *  A posting list under construction, to which records are added in
+     *  ascending order.
+     */
+    private static final class PostingList {
+
+        /**
+         *  The records added so far, followed by unused space.
+         */
+        private int[] records = new int[4];
+
+        /**
+         *  The number of records added.
+         */
+        private int count;
+
+
+        /**
+         *  Adds a record to the end of the list. A token repeated in one
+         *  record is only posted once.
+         *
+         *@param  recNo  the record to add.
+         */
+        void add(int recNo) {
+            if (count > 0 && records[count - 1] == recNo) {
+                return;
+            }
+            if (count == records.length) {
+                int[] grown = new int[count * 2];
+                System.arraycopy(records, 0, grown, 0, count);
+                records = grown;
+            }
+            records[count++] = recNo;
+        }
+
+
+        /**
+         *  Gets the records in the list.
+         *
+         *@return    an array holding exactly the records added.
+         */
+        int[] toArray() {
+            int[] list = new int[count];
+            System.arraycopy(records, 0, list, 0, count);
+            return list;
+        }
+    }
+}
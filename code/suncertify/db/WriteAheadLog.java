@@ -0,0 +1,333 @@
+package suncertify.db;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ *  An append-only log of the changes made to the database file. Each change
+ *  is appended to the log, and made durable, before it is applied to the
+ *  database file itself, so that a change interrupted by a crash can be
+ *  replayed when the database is next opened.
+ *  <p>
+ *  Durability is group committed: a thread waiting for its change to reach
+ *  the disk forces every change appended so far, so concurrent writers
+ *  share a single <code>force</code> rather than each paying for their own.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class WriteAheadLog {
+
+    /**
+     *  Operation code for an update of a record's owner field.
+     */
+    static final byte OP_UPDATE = 1;
+
+    /**
+     *  Operation code for the deletion of a record.
+     */
+    static final byte OP_DELETE = 2;
+
+    /**
+     *  Operation code for the creation of a record.
+     */
+    static final byte OP_CREATE = 3;
+
+    /**
+     *  Operation code for an update of the owner field of several records,
+     *  made as one change. The record number of the entry holds the number
+     *  of records updated, and its data holds the number of each record
+     *  followed by the record's new owner field.
+     */
+    static final byte OP_BATCH_UPDATE = 4;
+
+    /**
+     *  Operation code cancelling an earlier entry which could not be forced
+     *  to disk, and whose change was therefore reported as failed and undone.
+     *  The record number of the entry holds the log position at the end of
+     *  the cancelled entry, and its data is empty.
+     */
+    static final byte OP_ABORT = 5;
+
+    /**
+     *  The number of bytes in an entry besides its data: length, operation,
+     *  record number and checksum.
+     */
+    private static final int ENTRY_OVERHEAD = 4 + 1 + 8 + 8;
+
+    /**
+     *  The log file, held open while the log is in use.
+     */
+    private RandomAccessFile logFile;
+
+    /**
+     *  The channel over the log file.
+     */
+    private FileChannel channel;
+
+    /**
+     *  The position up to which entries have been written to the log.
+     */
+    private long writtenPosition;
+
+    /**
+     *  The position up to which entries are known to be on the disk.
+     */
+    private long syncedPosition;
+
+    /**
+     *  Whether a thread is currently forcing the log to disk.
+     */
+    private boolean syncing;
+
+
+    /**
+     *  Constructor for the WriteAheadLog object. Opens, or creates, the log
+     *  file. New entries are appended after any entries already in the file.
+     *
+     *@param  filePath         the path of the log file.
+     *@throws  IOException     thrown if the log file could not be opened.
+     */
+    WriteAheadLog(String filePath) throws IOException {
+        logFile = new RandomAccessFile(filePath, "rw");
+        channel = logFile.getChannel();
+        writtenPosition = channel.size();
+        syncedPosition = writtenPosition;
+    }
+
+
+    /**
+     *  Appends an entry to the log. The entry is not guaranteed to be on the
+     *  disk until <code>sync</code> has been called with the returned
+     *  position.
+     *
+     *@param  op               the operation code of the entry.
+     *@param  recNo            the record the operation applies to.
+     *@param  data             the data written by the operation.
+     *@return                  the log position at the end of the entry.
+     *@throws  IOException     thrown if the entry could not be written.
+     */
+    synchronized long append(byte op, long recNo, byte[] data)
+             throws IOException {
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_OVERHEAD + data.length);
+        entry.putInt(data.length);
+        entry.put(op);
+        entry.putLong(recNo);
+        entry.put(data);
+        CRC32 crc = new CRC32();
+        crc.update(entry.array(), 0, entry.position());
+        entry.putLong(crc.getValue());
+        entry.flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry, writtenPosition + entry.position());
+        }
+        writtenPosition += entry.limit();
+        return writtenPosition;
+    }
+
+
+    /**
+     *  Waits until the log is on the disk up to the specified position. If no
+     *  other thread is forcing the log, this thread forces every entry
+     *  written so far, on behalf of all waiting threads.
+     *
+     *@param  position         the log position which must be made durable.
+     *@throws  IOException     thrown if the log could not be forced to disk.
+     */
+    void sync(long position) throws IOException {
+        long target;
+        synchronized (this) {
+            while (syncing && syncedPosition < position) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(
+                            "Interrupted waiting for log sync");
+                }
+            }
+            if (syncedPosition >= position) {
+                return;
+            }
+            syncing = true;
+            target = writtenPosition;
+        }
+        boolean forced = false;
+        try {
+            channel.force(false);
+            forced = true;
+        } finally {
+            synchronized (this) {
+                if (forced && target > syncedPosition) {
+                    syncedPosition = target;
+                }
+                syncing = false;
+                notifyAll();
+            }
+        }
+    }
+
+
+    /**
+     *  Gets the number of bytes currently held in the log.
+     *
+     *@return    the size of the log.
+     */
+    synchronized long size() {
+        return writtenPosition;
+    }
+
+
+    /**
+     *  Reads all complete entries from the log, in the order they were
+     *  appended. Reading stops at the first entry which is incomplete or
+     *  fails its checksum, as left by a crash during an append.
+     *
+     *@return                  a list of <code>WriteAheadLog.Entry</code>
+     *      objects.
+     *@throws  IOException     thrown if the log could not be read.
+     */
+    synchronized List readEntries() throws IOException {
+        List entries = new ArrayList();
+        ByteBuffer contents = ByteBuffer.allocate((int) writtenPosition);
+        while (contents.hasRemaining()) {
+            if (channel.read(contents, contents.position()) < 0) {
+                break;
+            }
+        }
+        contents.flip();
+        while (contents.remaining() >= ENTRY_OVERHEAD) {
+            int start = contents.position();
+            int length = contents.getInt();
+            if (length < 0 || contents.remaining() < length + 1 + 8 + 8) {
+                break;
+            }
+            byte op = contents.get();
+            long recNo = contents.getLong();
+            byte[] data = new byte[length];
+            contents.get(data);
+            CRC32 crc = new CRC32();
+            crc.update(contents.array(), start, contents.position() - start);
+            if (contents.getLong() != crc.getValue()) {
+                break;
+            }
+            entries.add(new Entry(op, recNo, data, contents.position()));
+        }
+        return entries;
+    }
+
+
+    /**
+     *  Discards every entry in the log. This must only be done once all the
+     *  logged changes are safely on the disk in the database file.
+     *
+     *@throws  IOException     thrown if the log could not be truncated.
+     */
+    synchronized void truncate() throws IOException {
+        channel.truncate(0);
+        channel.force(true);
+        writtenPosition = 0;
+        syncedPosition = 0;
+    }
+
+
+    /**
+     *  Closes the log file.
+     *
+     *@throws  IOException     thrown if the log could not be closed.
+     */
+    synchronized void close() throws IOException {
+        channel.close();
+        logFile.close();
+    }
+
+
+    /**
+     *  A single change read back from the log.
+     */
+    static final class Entry {
+
+        /**
+         *  The operation code of the change.
+         */
+        private byte op;
+
+        /**
+         *  The record the change applies to.
+         */
+        private long recNo;
+
+        /**
+         *  The data written by the change.
+         */
+        private byte[] data;
+
+        /**
+         *  The log position at the end of the entry.
+         */
+        private long position;
+
+
+        /**
+         *  Constructor for the Entry object.
+         *
+         *@param  op        the operation code of the change.
+         *@param  recNo     the record the change applies to.
+         *@param  data      the data written by the change.
+         *@param  position  the log position at the end of the entry.
+         */
+        Entry(byte op, long recNo, byte[] data, long position) {
+            this.op = op;
+            this.recNo = recNo;
+            this.data = data;
+            this.position = position;
+        }
+
+
+        /**
+         *  Gets the operation code of the change.
+         *
+         *@return    the operation code.
+         */
+        byte getOp() {
+            return op;
+        }
+
+
+        /**
+         *  Gets the record the change applies to.
+         *
+         *@return    the record number.
+         */
+        long getRecNo() {
+            return recNo;
+        }
+
+
+        /**
+         *  Gets the data written by the change.
+         *
+         *@return    the data bytes.
+         */
+        byte[] getData() {
+            return data;
+        }
+
+
+        /**
+         *  Gets the log position at the end of the entry, as returned by
+         *  <code>append</code> when it was written.
+         *
+         *@return    the position after the entry.
+         */
+        long getPosition() {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package suncertify.server;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ *  One page of the contractors found by a search or listing, together with
+ *  the cursor from which the following page may be fetched. The pages of a
+ *  search are cut from a snapshot of the record numbers it found, so paging
+ *  through a search neither skips nor repeats a contractor when records are
+ *  added or deleted in the meantime.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+public final class Page implements Serializable {
+    /**
+     * Guarantee a consistent serialVersionUID value across different
+     * java compiler implementations.
+     */
+    static final long serialVersionUID = 1L;
+
+    /**
+     *  The contractors on this page.
+     */
+    private List contractors;
+
+    /**
+     *  The cursor of the following page, or null if this is the last page.
+     */
+    private String nextCursor;
+
+    /**
+     *  The number of contractors found by the search.
+     */
+    private int total;
+
+
+    /**
+     *  Constructor for the Page object.
+     *
+     *@param  contractors  the contractors on this page.
+     *@param  nextCursor   the cursor of the following page, or null if this
+     *      is the last page.
+     *@param  total        the number of contractors found by the search.
+     */
+    public Page(List contractors, String nextCursor, int total) {
+        this.contractors = contractors;
+        this.nextCursor = nextCursor;
+        this.total = total;
+    }
+
+
+    /**
+     *  Gets the contractors on this page.
+     *
+     *@return    the list of contractors on this page.
+     */
+    public List getContractors() {
+        return contractors;
+    }
+
+
+    /**
+     *  Gets the cursor from which the following page may be fetched.
+     *
+     *@return    the cursor of the following page, or null if this is the
+     *      last page.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+
+    /**
+     *  Gets whether there are more pages after this one.
+     *
+     *@return    true if there is a following page.
+     */
+    public boolean hasNextPage() {
+        return nextCursor != null;
+    }
+
+
+    /**
+     *  Gets the number of contractors found by the search, on all of its
+     *  pages.
+     *
+     *@return    the total number of contractors found.
+     */
+    public int getTotal() {
+        return total;
+    }
+}
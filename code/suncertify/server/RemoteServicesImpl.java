@@ -8,6 +8,8 @@ import java.io.IOException;
 import java.io.File;
 import java.net.MalformedURLException;
 import suncertify.db.RecordNotFoundException;
+import suncertify.db.Data;
+import suncertify.db.Query;
 
 /**
  *  An implementation of the <code>RemoteServices</code> interface,allowing
@@ -40,13 +42,15 @@ public final class RemoteServicesImpl extends UnicastRemoteObject
      *  Constructor for the RemoteServicesImpl object.
      *
      *@param  databaseFile               the database file
+     *@param  storageMode                the storage mode used to update the
+     *      database file
      *@exception  RemoteException        thrown if an exception occurs in the
      *      <code>RemoteServicesImpl</code> class
      *@exception  MalformedURLException  thrown if the URL is badly formed
      */
-    private RemoteServicesImpl(File databaseFile) throws MalformedURLException, 
-            RemoteException {
-        services = ServicesImpl.getInstance(databaseFile);
+    private RemoteServicesImpl(File databaseFile, String storageMode)
+            throws MalformedURLException, RemoteException {
+        services = ServicesImpl.getInstance(databaseFile, storageMode);
         try {
             /* Bind the server object to the RMI registry. */
             Naming.rebind("BSServices", this);
@@ -96,6 +100,32 @@ public final class RemoteServicesImpl extends UnicastRemoteObject
         return services.book(id, customerID);
     }
 
+
+    /**
+     *  Books several contractors in the database in one call. Either every
+     *  contractor is booked, or none is.
+     *
+     *@param  ids                          the identifiers of the contractors
+     *      to book
+     *@param  customerID                   the CSR under which to book the
+     *      contractors
+     *@return                              true if the contractors were
+     *      booked, else false
+     *@exception  RemoteException          thrown if an exception occurs in
+     *      the <code>RemoteServicesImpl</code> class
+     *@exception  RecordNotFoundException  thrown if a contractor was not
+     *      found or has been deleted
+     *@exception  IOException              thrown if there is a problem
+     *      accessing the database file
+     *@exception  SecurityException        thrown if a record is locked by
+     *      another user
+     */
+    public boolean book(int[] ids, long customerID)
+             throws IOException, RecordNotFoundException, RemoteException, 
+             SecurityException {
+        return services.book(ids, customerID);
+    }
+
     
     /**
      *  Unbooks a contractor in the database.
@@ -138,6 +168,231 @@ public final class RemoteServicesImpl extends UnicastRemoteObject
     }
 
 
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities.
+     *
+     *@param  name                 the name to search for
+     *@param  location             the location to search for
+     *@param  specialities         the specialities a contractor must offer,
+     *      or null to search by name and location only
+     *@return                      the list of contractors which match the
+     *      search criteria
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities)
+             throws IOException, RemoteException {
+        return services.find(name, location, specialities);
+    }
+
+
+    /**
+     *  Finds contractors that match the specified search criteria, offer
+     *  every one of the specified specialities, and whose size and rate lie
+     *  within the specified ranges.
+     *
+     *@param  name                 the name to search for
+     *@param  location             the location to search for
+     *@param  specialities         the specialities a contractor must offer,
+     *      or null to search by name and location only
+     *@param  minSize              the smallest size to match
+     *@param  maxSize              the largest size to match
+     *@param  minRate              the lowest hourly rate to match, in cents
+     *@param  maxRate              the highest hourly rate to match, in cents
+     *@return                      the list of contractors which match the
+     *      search criteria
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities,
+            int minSize, int maxSize, int minRate, int maxRate)
+             throws IOException, RemoteException {
+        return services.find(name, location, specialities, minSize, maxSize,
+                minRate, maxRate);
+    }
+
+
+    /**
+     *  Finds contractors that match every condition of a query.
+     *
+     *@param  query                the query to run
+     *@return                      the list of contractors which match the
+     *      query
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public List find(Query query) throws IOException, RemoteException {
+        return services.find(query);
+    }
+
+
+    /**
+     *  Summarizes the contractors found by a query in groups.
+     *
+     *@param  query                the query finding the contractors to
+     *      summarize
+     *@param  groupBy              the field to group on
+     *@return                      the list of <code>Summary</code> objects,
+     *      one for each group of contractors found
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public List summarize(Query query, int groupBy)
+             throws IOException, RemoteException {
+        return services.summarize(query, groupBy);
+    }
+
+
+    /**
+     *  Gets the statistics of the contractors whose locks are most
+     *  contended.
+     *
+     *@param  count                the maximum number of contractors to
+     *      report
+     *@return                      the list of <code>LockStatistics</code>
+     *      objects, the contractors waited for longest in total first
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database
+     */
+    public List getLockStatistics(int count)
+             throws IOException, RemoteException {
+        return services.getLockStatistics(count);
+    }
+
+
+    /**
+     *  Gets the number of searches answered from the cache of search
+     *  results.
+     *
+     *@return                      the number of cache hits
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem reaching the
+     *      server
+     */
+    public long getCacheHits() throws IOException, RemoteException {
+        return services.getCacheHits();
+    }
+
+
+    /**
+     *  Gets the number of searches which had to be run against the database,
+     *  because no current result was cached.
+     *
+     *@return                      the number of cache misses
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem reaching the
+     *      server
+     */
+    public long getCacheMisses() throws IOException, RemoteException {
+        return services.getCacheMisses();
+    }
+
+
+    /**
+     *  Gets the contractors currently booked by a customer.
+     *
+     *@param  customerID           the CSR the contractors are booked under
+     *@return                      the list of contractors booked by the
+     *      customer
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public List getBookings(long customerID) throws IOException,
+            RemoteException {
+        return services.getBookings(customerID);
+    }
+
+
+    /**
+     *  Gets the first page of the contractors which have not been deleted.
+     *
+     *@param  pageSize             the maximum number of contractors on a page
+     *@return                      the first page of contractors
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public Page getContractorPage(int pageSize) throws IOException,
+            RemoteException {
+        return services.getContractorPage(pageSize);
+    }
+
+
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities, returning the first page of
+     *  the result.
+     *
+     *@param  name                 the name to search for
+     *@param  location             the location to search for
+     *@param  specialities         the specialities a contractor must offer,
+     *      or null to search by name and location only
+     *@param  pageSize             the maximum number of contractors on a page
+     *@return                      the first page of contractors which match
+     *      the search criteria
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public Page findPage(String name, String location, String[] specialities,
+            int pageSize) throws IOException, RemoteException {
+        return services.findPage(name, location, specialities, pageSize);
+    }
+
+
+    /**
+     *  Finds contractors that match every condition of a query, returning
+     *  the first page of the result.
+     *
+     *@param  query                the query to run
+     *@param  pageSize             the maximum number of contractors on a page
+     *@return                      the first page of contractors which match
+     *      the query
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if there is a problem accessing the 
+     *      database file
+     */
+    public Page findPage(Query query, int pageSize) throws IOException,
+            RemoteException {
+        return services.findPage(query, pageSize);
+    }
+
+
+    /**
+     *  Gets the page of a search or listing which starts at a cursor.
+     *
+     *@param  cursor               the cursor returned with the previous page
+     *@param  pageSize             the maximum number of contractors on a page
+     *@return                      the page starting at the cursor
+     *@exception  RemoteException  thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  IOException      thrown if the cursor is invalid or has
+     *      expired, or if there is a problem accessing the database file
+     */
+    public Page getNextPage(String cursor, int pageSize) throws IOException,
+            RemoteException {
+        return services.getNextPage(cursor, pageSize);
+    }
+
+
     /**
      *  Deletes a contractor from the database.
      *
@@ -184,9 +439,28 @@ public final class RemoteServicesImpl extends UnicastRemoteObject
      */
     public static synchronized RemoteServicesImpl getInstance(File databaseFile)
              throws MalformedURLException, RemoteException {
+        return getInstance(databaseFile, Data.STORAGE_FILE);
+    }
+
+
+    /**
+     *  Gets the single instance of the remote server, opening the database
+     *  with the specified storage mode if the server has not yet been
+     *  created.
+     *
+     *@param  databaseFile               the database file
+     *@param  storageMode                the storage mode used to update the
+     *      database file
+     *@return                            the remote server object
+     *@exception  RemoteException        thrown if an exception occurs in the
+     *      <code>RemoteServicesImpl</code> class
+     *@exception  MalformedURLException  thrown if the URL is badly formed
+     */
+    public static synchronized RemoteServicesImpl getInstance(File databaseFile,
+            String storageMode) throws MalformedURLException, RemoteException {
         if (ref == null) {
             try {
-                ref = new RemoteServicesImpl(databaseFile);
+                ref = new RemoteServicesImpl(databaseFile, storageMode);
             } catch (RemoteException re) {
                 throw re;
             } catch (MalformedURLException mue) {
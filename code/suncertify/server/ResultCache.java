@@ -0,0 +1,162 @@
+package suncertify.server;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  A bounded cache of search results, keyed by the normalized search
+ *  criteria. Each result is tagged with the version of the data it was
+ *  computed from, and is only returned while the data is still at that
+ *  version. The cache is bounded by the number of record numbers it holds,
+ *  each result counting as one more than its length, since a single
+ *  result may hold every record of a large table. When the cache is full
+ *  the least recently used results are evicted, and a result larger than
+ *  the whole cache is not cached.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class ResultCache {
+
+    /**
+     *  The cached results, in order of use, least recently used first.
+     */
+    private Map results = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     *  The maximum number of record numbers to hold.
+     */
+    private long capacity;
+
+    /**
+     *  The number of record numbers held, counting each result as one more
+     *  than its length.
+     */
+    private long held = 0;
+
+    /**
+     *  The number of lookups which found a current result.
+     */
+    private long hits = 0;
+
+    /**
+     *  The number of lookups which found no current result.
+     */
+    private long misses = 0;
+
+
+    /**
+     *  Constructor for the ResultCache object.
+     *
+     *@param  capacity  the maximum number of record numbers to hold.
+     */
+    ResultCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+
+    /**
+     *  Looks up the result of a search.
+     *
+     *@param  key      the normalized search criteria.
+     *@param  version  the current version of the data.
+     *@return          the record numbers found by the search, or null if
+     *      there is no result for the current version.
+     */
+    synchronized long[] get(String key, long version) {
+        Result result = (Result) results.get(key);
+        if (result == null || result.version != version) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return result.recordNumbers;
+    }
+
+
+    /**
+     *  Stores the result of a search.
+     *
+     *@param  key            the normalized search criteria.
+     *@param  version        the version of the data read by the search.
+     *@param  recordNumbers  the record numbers found by the search, which
+     *      must not be modified afterwards.
+     */
+    synchronized void put(String key, long version, long[] recordNumbers) {
+        Result previous = (Result) results.remove(key);
+        if (previous != null) {
+            held -= cost(previous.recordNumbers);
+        }
+        if (cost(recordNumbers) > capacity) {
+            return;
+        }
+        results.put(key, new Result(version, recordNumbers));
+        held += cost(recordNumbers);
+        Iterator it = results.values().iterator();
+        while (held > capacity) {
+            held -= cost(((Result) it.next()).recordNumbers);
+            it.remove();
+        }
+    }
+
+
+    /**
+     *  Gets the number of lookups which found a current result.
+     *
+     *@return    the number of cache hits.
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+
+    /**
+     *  Gets the number of lookups which found no current result.
+     *
+     *@return    the number of cache misses.
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+
+    /**
+     *  Gets the share of the capacity of the cache taken by a result.
+     *
+     *@param  recordNumbers  the record numbers found by a search.
+     *@return                one more than the number of record numbers.
+     */
+    private static long cost(long[] recordNumbers) {
+        return recordNumbers.length + 1;
+    }
+
+
+    /**
+     *  A cached search result.
+     */
+    private static final class Result {
+
+        /**
+         *  The version of the data the result was computed from.
+         */
+        private long version;
+
+        /**
+         *  The record numbers found by the search.
+         */
+        private long[] recordNumbers;
+
+
+        /**
+         *  Constructor for the Result object.
+         *
+         *@param  version        the version of the data.
+         *@param  recordNumbers  the record numbers found.
+         */
+        Result(long version, long[] recordNumbers) {
+            this.version = version;
+            this.recordNumbers = recordNumbers;
+        }
+    }
+}
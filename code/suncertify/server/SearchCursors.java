@@ -0,0 +1,90 @@
+package suncertify.server;
+
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ *  The snapshots of search results which clients are paging through. Each
+ *  snapshot is the array of record numbers a search found, and is named by
+ *  an identifier which forms part of the cursor of each page. Identifiers
+ *  are random, so one client cannot page through another's snapshot by
+ *  guessing its cursor. The snapshots
+ *  are bounded by the number of record numbers they hold, each snapshot
+ *  counting as one more than its length. When they are full the least
+ *  recently used snapshots are dropped, and the cursors into them expire;
+ *  the newest snapshot is always kept, however large.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class SearchCursors {
+
+    /**
+     *  The snapshots, in order of use, least recently used first.
+     */
+    private Map snapshots = new LinkedHashMap(16, 0.75f, true);
+
+    /**
+     *  The maximum number of record numbers to hold.
+     */
+    private long capacity;
+
+    /**
+     *  The number of record numbers held, counting each snapshot as one more
+     *  than its length.
+     */
+    private long held = 0;
+
+    /**
+     *  The generator of snapshot identifiers.
+     */
+    private SecureRandom random = new SecureRandom();
+
+
+    /**
+     *  Constructor for the SearchCursors object.
+     *
+     *@param  capacity  the maximum number of record numbers to hold.
+     */
+    SearchCursors(long capacity) {
+        this.capacity = capacity;
+    }
+
+
+    /**
+     *  Stores a snapshot of the result of a search.
+     *
+     *@param  recordNumbers  the record numbers found by the search, which
+     *      must not be modified afterwards.
+     *@return                the identifier of the snapshot.
+     */
+    synchronized String open(long[] recordNumbers) {
+        String id;
+        do {
+            id = Long.toString(random.nextLong() & Long.MAX_VALUE,
+                    Character.MAX_RADIX);
+        } while (snapshots.containsKey(id));
+        snapshots.put(id, recordNumbers);
+        held += recordNumbers.length + 1;
+        Iterator it = snapshots.values().iterator();
+        while (held > capacity && snapshots.size() > 1) {
+            held -= ((long[]) it.next()).length + 1;
+            it.remove();
+        }
+        return id;
+    }
+
+
+    /**
+     *  Looks up a snapshot.
+     *
+     *@param  id  the identifier of the snapshot.
+     *@return     the record numbers in the snapshot, or null if the snapshot
+     *      has been dropped.
+     */
+    synchronized long[] get(String id) {
+        return (long[]) snapshots.get(id);
+    }
+}
@@ -2,6 +2,7 @@ package suncertify.server;
 
 import java.io.IOException;
 import java.util.List;
+import suncertify.db.Query;
 import suncertify.db.RecordNotFoundException;
 
 /**
@@ -32,6 +33,27 @@ public interface Services {
     public boolean book(int id, long customerID) throws IOException,
             RecordNotFoundException, SecurityException;
 
+
+    /**
+     *  Books several contractors in the database in one call, such as a crew
+     *  for one job. Either every contractor is booked, or none is.
+     *
+     *@param  ids                          the identifiers of the contractors
+     *      to book
+     *@param  customerID                   the CSR under which to book the
+     *      contractors
+     *@return                              true if the contractors were
+     *      booked, else false if any of them is already booked
+     *@exception  RecordNotFoundException  thrown if a contractor was not
+     *      found or has been deleted
+     *@exception  IOException              thrown if there is a problem
+     *      accessing the database file
+     *@exception  SecurityException        thrown if a record is locked by
+     *      another user
+     */
+    public boolean book(int[] ids, long customerID) throws IOException,
+            RecordNotFoundException, SecurityException;
+
     /**
      *  Unbooks a contractor in the database.
      *
@@ -62,6 +84,189 @@ public interface Services {
     public List find(String name, String location) throws IOException;
 
 
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@return                  the list of contractors which match the search
+     *      criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities)
+             throws IOException;
+
+
+    /**
+     *  Finds contractors that match the specified search criteria, offer
+     *  every one of the specified specialities, and whose size and rate lie
+     *  within the specified ranges. Both ends of each range are inclusive,
+     *  and rates are given in cents, so contractors with at least 10 staff
+     *  charging under $60.00 an hour are found with a size range of 10 to
+     *  <code>Integer.MAX_VALUE</code> and a rate range of 0 to 5999.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@param  minSize          the smallest size to match
+     *@param  maxSize          the largest size to match
+     *@param  minRate          the lowest hourly rate to match, in cents
+     *@param  maxRate          the highest hourly rate to match, in cents
+     *@return                  the list of contractors which match the search
+     *      criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities,
+            int minSize, int maxSize, int minRate, int maxRate)
+             throws IOException;
+
+
+    /**
+     *  Finds contractors that match every condition of a query. A query may
+     *  test any field of a contractor for a prefix or an exact value, the
+     *  size and rate for a range, and whether the contractor is booked.
+     *
+     *@param  query            the query to run
+     *@return                  the list of contractors which match the query
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(Query query) throws IOException;
+
+
+    /**
+     *  Summarizes the contractors found by a query in groups, such as the
+     *  number of contractors in each location, the number booked and free,
+     *  or the average rate of each speciality. The summaries are computed on
+     *  the server, so the contractors themselves are not sent to the client.
+     *
+     *@param  query            the query finding the contractors to summarize
+     *@param  groupBy          the field to group on, one of the field
+     *      constants of <code>Query</code>, or <code>Summary.BOOKING</code>
+     *      or <code>Summary.ALL</code>
+     *@return                  the list of <code>Summary</code> objects, one
+     *      for each group of contractors found
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List summarize(Query query, int groupBy) throws IOException;
+
+
+    /**
+     *  Gets the statistics of the contractors whose locks are most
+     *  contended, to show where users wait for one another.
+     *
+     *@param  count            the maximum number of contractors to report
+     *@return                  the list of <code>LockStatistics</code>
+     *      objects, the contractors waited for longest in total first
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database
+     */
+    public List getLockStatistics(int count) throws IOException;
+
+
+    /**
+     *  Gets the number of searches answered from the server's cache of
+     *  search results.
+     *
+     *@return                  the number of cache hits
+     *@exception  IOException  thrown if there is a problem reaching the
+     *      server
+     */
+    public long getCacheHits() throws IOException;
+
+
+    /**
+     *  Gets the number of searches which had to be run against the database,
+     *  because no current result was cached.
+     *
+     *@return                  the number of cache misses
+     *@exception  IOException  thrown if there is a problem reaching the
+     *      server
+     */
+    public long getCacheMisses() throws IOException;
+
+
+    /**
+     *  Gets the contractors currently booked by a customer.
+     *
+     *@param  customerID       the CSR the contractors are booked under
+     *@return                  the list of contractors booked by the customer
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List getBookings(long customerID) throws IOException;
+
+
+    /**
+     *  Gets the first page of the contractors which have not been deleted.
+     *  The remaining pages are fetched with <code>getNextPage</code>.
+     *
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page getContractorPage(int pageSize) throws IOException;
+
+
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities, returning the first page of
+     *  the result. The remaining pages are fetched with
+     *  <code>getNextPage</code>, and hold the contractors found when the
+     *  search was run, in the same order, whatever changes are made to the
+     *  database in the meantime.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors which match the
+     *      search criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page findPage(String name, String location, String[] specialities,
+            int pageSize) throws IOException;
+
+
+    /**
+     *  Finds contractors that match every condition of a query, returning
+     *  the first page of the result. The remaining pages are fetched with
+     *  <code>getNextPage</code>.
+     *
+     *@param  query            the query to run
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors which match the
+     *      query
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page findPage(Query query, int pageSize) throws IOException;
+
+
+    /**
+     *  Gets the page of a search or listing which starts at a cursor. A
+     *  cursor expires once the server has dropped the snapshot of its
+     *  search, after which the search must be run again.
+     *
+     *@param  cursor           the cursor returned with the previous page
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the page starting at the cursor
+     *@exception  IOException  thrown if the cursor is invalid or has
+     *      expired, or if there is a problem accessing the database file
+     */
+    public Page getNextPage(String cursor, int pageSize) throws IOException;
+
+
     /**
      *  Deletes a contractor from the database.
      *
@@ -91,7 +296,7 @@ public interface Services {
 
 
     /**
-     *  Gets the list of contractors.
+     *  Gets the list of contractors which have not been deleted.
      *
      *@return                  the list of contractors in the database
      *@exception  IOException  thrown if there is a problem accessing the
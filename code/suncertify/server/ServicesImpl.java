@@ -1,14 +1,15 @@
 package suncertify.server;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.File;
 import java.util.List;
-import java.util.Iterator;
 import java.util.ArrayList;
 import suncertify.db.RecordNotFoundException;
 import suncertify.db.DuplicateKeyException;
 import suncertify.db.Data;
 import suncertify.db.Contractor;
+import suncertify.db.Query;
 
 /**
  *  An implementation of the <code>Services</code> interface, allowing clients
@@ -24,6 +25,40 @@ public final class ServicesImpl implements Services {
      */
     private Data databaseAccess;
 
+    /**
+     * The cache of recent search results.
+     */
+    private ResultCache searchCache = new ResultCache(SEARCH_CACHE_SIZE);
+
+    /**
+     * The number of record numbers held in the cache of search results,
+     * 8MB of results.
+     */
+    private static final long SEARCH_CACHE_SIZE = 1000000;
+
+    /**
+     * The snapshots of search results being paged through by clients.
+     */
+    private SearchCursors searchCursors = new SearchCursors(CURSOR_SIZE);
+
+    /**
+     * The number of record numbers held in the search snapshots open for
+     * paging, 16MB of snapshots.
+     */
+    private static final long CURSOR_SIZE = 2000000;
+
+    /**
+     * The character separating the snapshot identifier of a cursor from the
+     * position of its page.
+     */
+    private static final char CURSOR_SEPARATOR = ':';
+
+    /**
+     * The longest time in milliseconds to wait for a contractor to be
+     * unlocked by another user.
+     */
+    private static final long LOCK_TIMEOUT = 5000;
+
     /**
      * A reference to the single instance of this class.
      */
@@ -34,21 +69,23 @@ public final class ServicesImpl implements Services {
      *  Private constructor to enforce singleton.
      *
      *@param  databaseFile  the data file.
+     *@param  storageMode   the storage mode used to update the data file.
      */
-    private ServicesImpl(File databaseFile) {
-        databaseAccess = Data.getInstance(databaseFile.getPath());
+    private ServicesImpl(File databaseFile, String storageMode) {
+        databaseAccess = Data.getInstance(databaseFile.getPath(), storageMode);
     }
 
 
     /**
-     *  Gets the list of contractors from the database.
+     *  Gets the list of contractors from the database. Deleted contractors
+     *  are left out.
      *
      *@return                  the list of contractors in the database.
      *@exception  IOException  thrown if there is a problem
      *      accessing the database file
      */
     public List getContractors() throws IOException {
-        return databaseAccess.getContractorList();
+        return getContractors(search(new Query()));
     }
 
 
@@ -70,37 +107,65 @@ public final class ServicesImpl implements Services {
      */
     public boolean book(int id, long customerID) throws IOException,
             RecordNotFoundException, SecurityException {
-        /**
-         * Read record to see if the contractor we are trying to
-         * book is already booked by someone else, or is deleted.
-         */
-        String owner = databaseAccess.readRecord((long)id)[2].trim();
-        boolean deleted = databaseAccess.readRecord((long)id)[6].equals("true");
-        if (owner.length() > 0) {
-            return false;
-        } else if (deleted) {
-            throw new RecordNotFoundException("This contractor has been "
+        while (true) {
+            /*
+             * Book the contractor if it is free and unchanged since its
+             * stamp was read, in one atomic step without locking it.
+             */
+            long stamp = databaseAccess.getRecordVersion(id);
+            if (databaseAccess.bookRecord(id, "" + customerID, stamp)) {
+                return true;
+            }
+            /*
+             * Read the record to see whether the contractor is already
+             * booked by someone else, or is deleted. Otherwise it changed
+             * after the stamp was read, or is locked, and the booking is
+             * tried again once any lock is released.
+             */
+            Contractor contractor = databaseAccess.getContractor(id);
+            if (contractor.getOwner().trim().length() > 0) {
+                return false;
+            } else if (contractor.getDeleted()) {
+                throw new RecordNotFoundException("This contractor has been "
                         + "deleted");
+            }
+            awaitUnlock(id);
+        }
+    }
+
+
+    /**
+     *  Books several contractor records for a client as one atomic change.
+     *  The records are locked in ascending order, so that concurrent batches
+     *  cannot deadlock, and either every contractor is booked or none is.
+     *
+     *@param  ids                          the identifiers of the contractor
+     *      records to book.
+     *@param  customerID                   the id of the customer against whom
+     *      to book the contractors.
+     *@return                              true if the contractors were
+     *      booked, else false if any of them is already booked.
+     *@exception  IOException              thrown if there is a problem
+     *      accessing the database file
+     *@exception  RecordNotFoundException  thrown if a contractor is not
+     *      found to book, or has been deleted
+     *@exception  SecurityException        thrown if a record is still locked
+     *      by another user after the lock timeout
+     */
+    public boolean book(int[] ids, long customerID) throws IOException,
+            RecordNotFoundException, SecurityException {
+        long[] recordNumbers = new long[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            recordNumbers[i] = ids[i];
         }
- 
-        /* Lock the record and get the cookie. */
-        long cookie = databaseAccess.lockRecord(id);
-        /* Update the record's owner field with the CSR. */
         try {
-            databaseAccess.updateRecord(id, new String[]{""
-                    + customerID}, cookie);
-        } catch (RecordNotFoundException rnf) {
-            throw rnf;
-        } catch (SecurityException se) {
-            throw se;
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IOException();
-        } finally {
-            /* Unlock the record with the cookie. */
-            databaseAccess.unlock(id, cookie);
+            return databaseAccess.bookRecords(recordNumbers, "" + customerID,
+                    LOCK_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to lock "
+                    + "the contractors");
         }
-        return true;
     }
 
 
@@ -120,38 +185,87 @@ public final class ServicesImpl implements Services {
      */
     public boolean unBook(int id) throws IOException,
             RecordNotFoundException, SecurityException {
-        /**
-         * Read record to see if the contractor we are trying to
-         * unbook is already unbooked or deleted.
-         */
-        String owner = databaseAccess.readRecord((long)id)[2].trim();
-        boolean deleted = databaseAccess.readRecord((long)id)[6].equals("true");
-        if (owner.length() == 0) {
-            return false;
-        } else if (deleted) {
-            throw new RecordNotFoundException("This contractor has been "
+        while (true) {
+            /*
+             * Unbook the contractor if it is booked and unchanged since its
+             * stamp was read, in one atomic step without locking it.
+             */
+            long stamp = databaseAccess.getRecordVersion(id);
+            if (databaseAccess.unbookRecord(id, stamp)) {
+                return true;
+            }
+            /*
+             * Read the record to see whether the contractor is already
+             * unbooked, or is deleted. Otherwise it changed after the stamp
+             * was read, or is locked, and the unbooking is tried again once
+             * any lock is released.
+             */
+            Contractor contractor = databaseAccess.getContractor(id);
+            if (contractor.getOwner().trim().length() == 0) {
+                return false;
+            } else if (contractor.getDeleted()) {
+                throw new RecordNotFoundException("This contractor has been "
                         + "deleted");
+            }
+            awaitUnlock(id);
         }
- 
-        /* Lock the record and get the cookie. */
-        long cookie = databaseAccess.lockRecord(id);
-        /* Update the record's owner field with to a blank string. */
-        try {
-            databaseAccess.updateRecord(id, new String[]{"        "}, cookie);
-        } catch (RecordNotFoundException rnf) {
-            throw rnf;
-        } catch (SecurityException se) {
-            throw se;
-        } catch (Exception e) {
-            throw new IOException();
-        } finally {
-            /* Unlock the record with the cookie. */
-            databaseAccess.unlock(id, cookie);
-        }
-        return true;
     }
     
     
+    /**
+     *  Locks a contractor record, waiting no longer than the lock timeout
+     *  for another user to unlock it.
+     *
+     *@param  id                           the identifier of the contractor
+     *      record to lock.
+     *@return                              the cookie the record was locked
+     *      with.
+     *@exception  IOException              thrown if the thread is
+     *      interrupted while waiting
+     *@exception  RecordNotFoundException  thrown if the contractor is not
+     *      found to lock
+     *@exception  SecurityException        thrown if record is still locked by
+     *      another user after the timeout
+     */
+    private long lock(int id) throws IOException, RecordNotFoundException,
+            SecurityException {
+        long cookie;
+        try {
+            cookie = databaseAccess.tryLockRecord(id, LOCK_TIMEOUT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting to lock "
+                    + "the contractor");
+        }
+        if (cookie < 0) {
+            throw new SecurityException("This contractor is locked by "
+                    + "another user");
+        }
+        return cookie;
+    }
+
+
+    /**
+     *  Waits, no longer than the lock timeout, until a contractor record is
+     *  not locked by another user.
+     *
+     *@param  id                           the identifier of the contractor
+     *      record.
+     *@exception  IOException              thrown if the thread is
+     *      interrupted while waiting
+     *@exception  RecordNotFoundException  thrown if the contractor is not
+     *      found
+     *@exception  SecurityException        thrown if record is still locked by
+     *      another user after the timeout
+     */
+    private void awaitUnlock(int id) throws IOException,
+            RecordNotFoundException, SecurityException {
+        if (databaseAccess.isLocked(id)) {
+            databaseAccess.unlock(id, lock(id));
+        }
+    }
+
+
     /**
      *  Finds contractors that match the specified search criteria.
      *
@@ -163,31 +277,371 @@ public final class ServicesImpl implements Services {
      *      database file
      */
     public List find(String name, String location) throws IOException {
+        return find(name, location, null);
+    }
+
+
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@return                  the list of contractors which match the
+     *       search criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities)
+             throws IOException {
+        return getContractors(search(name, location, specialities, null));
+    }
+
+
+    /**
+     *  Finds contractors that match the specified search criteria, offer
+     *  every one of the specified specialities, and whose size and rate lie
+     *  within the specified ranges.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@param  minSize          the smallest size to match
+     *@param  maxSize          the largest size to match
+     *@param  minRate          the lowest hourly rate to match, in cents
+     *@param  maxRate          the highest hourly rate to match, in cents
+     *@return                  the list of contractors which match the
+     *       search criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(String name, String location, String[] specialities,
+            int minSize, int maxSize, int minRate, int maxRate)
+             throws IOException {
+        return getContractors(search(name, location, specialities,
+                new int[]{minSize, maxSize, minRate, maxRate}));
+    }
+
+
+    /**
+     *  Finds contractors that match every condition of a query.
+     *
+     *@param  query            the query to run
+     *@return                  the list of contractors which match the query
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List find(Query query) throws IOException {
+        return getContractors(search(query));
+    }
+
+
+    /**
+     *  Summarizes the contractors found by a query in groups.
+     *
+     *@param  query            the query finding the contractors to summarize
+     *@param  groupBy          the field to group on
+     *@return                  the list of <code>Summary</code> objects, one
+     *      for each group of contractors found
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List summarize(Query query, int groupBy) throws IOException {
+        return databaseAccess.summarize(query, groupBy);
+    }
+
+
+    /**
+     *  Gets the statistics of the contractors whose locks are most
+     *  contended.
+     *
+     *@param  count            the maximum number of contractors to report
+     *@return                  the list of <code>LockStatistics</code>
+     *      objects, the contractors waited for longest in total first
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database
+     */
+    public List getLockStatistics(int count) throws IOException {
+        return databaseAccess.getLockStatistics(count);
+    }
+
+
+    /**
+     *  Gets the first page of the contractors in the database which have not
+     *  been deleted.
+     *
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page getContractorPage(int pageSize) throws IOException {
+        return findPage("", "", null, pageSize);
+    }
+
+
+    /**
+     *  Finds contractors that match the specified search criteria and offer
+     *  every one of the specified specialities, returning the first page of
+     *  the result. The record numbers found are kept as a snapshot, from
+     *  which the following pages are cut.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null to search by name and location only
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors which match the
+     *      search criteria
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page findPage(String name, String location, String[] specialities,
+            int pageSize) throws IOException {
+        return findPage(getQuery(name, location, specialities, null),
+                pageSize);
+    }
+
+
+    /**
+     *  Finds contractors that match every condition of a query, returning
+     *  the first page of the result. The record numbers found are kept as a
+     *  snapshot, from which the following pages are cut.
+     *
+     *@param  query            the query to run
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the first page of contractors which match the
+     *      query
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public Page findPage(Query query, int pageSize) throws IOException {
+        checkPageSize(pageSize);
+        long[] recordNumbers = search(query);
+        if (recordNumbers.length <= pageSize) {
+            /* The whole result fits on one page, so no snapshot is kept. */
+            return new Page(getContractors(recordNumbers), null,
+                    recordNumbers.length);
+        }
+        return getPage(searchCursors.open(recordNumbers), recordNumbers, 0,
+                pageSize);
+    }
+
+
+    /**
+     *  Gets the page of a search or listing which starts at a cursor.
+     *
+     *@param  cursor           the cursor returned with the previous page
+     *@param  pageSize         the maximum number of contractors on a page
+     *@return                  the page starting at the cursor
+     *@exception  IOException  thrown if the cursor is invalid or has
+     *      expired, or if there is a problem accessing the database file
+     */
+    public Page getNextPage(String cursor, int pageSize) throws IOException {
+        checkPageSize(pageSize);
+        int separator = cursor.lastIndexOf(CURSOR_SEPARATOR);
+        if (separator < 0) {
+            throw new IOException("Invalid search cursor : " + cursor);
+        }
+        String id = cursor.substring(0, separator);
+        int offset;
+        try {
+            offset = Integer.parseInt(cursor.substring(separator + 1));
+        } catch (NumberFormatException nfe) {
+            throw new IOException("Invalid search cursor : " + cursor);
+        }
+        long[] recordNumbers = searchCursors.get(id);
+        if (recordNumbers == null) {
+            throw new IOException("Search cursor has expired");
+        }
+        if (offset < 0 || offset > recordNumbers.length) {
+            throw new IOException("Invalid search cursor : " + cursor);
+        }
+        return getPage(id, recordNumbers, offset, pageSize);
+    }
+
+
+    /**
+     *  Gets the number of searches answered from the cache of search
+     *  results.
+     *
+     *@return    the number of cache hits.
+     */
+    public long getCacheHits() {
+        return searchCache.getHits();
+    }
+
+
+    /**
+     *  Gets the number of searches which had to be run against the
+     *  database, because no current result was cached.
+     *
+     *@return    the number of cache misses.
+     */
+    public long getCacheMisses() {
+        return searchCache.getMisses();
+    }
+
+
+    /**
+     *  Cuts a page from the snapshot of a search.
+     *
+     *@param  id               the identifier of the snapshot
+     *@param  recordNumbers    the record numbers in the snapshot
+     *@param  offset           the position of the first contractor on the
+     *      page
+     *@param  pageSize         the maximum number of contractors on the page
+     *@return                  the page of contractors
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    private Page getPage(String id, long[] recordNumbers, int offset,
+            int pageSize) throws IOException {
+        int end = (int) Math.min((long) offset + pageSize,
+                recordNumbers.length);
+        long[] page = new long[end - offset];
+        System.arraycopy(recordNumbers, offset, page, 0, page.length);
+        String nextCursor = null;
+        if (end < recordNumbers.length) {
+            nextCursor = id + CURSOR_SEPARATOR + end;
+        }
+        return new Page(getContractors(page), nextCursor,
+                recordNumbers.length);
+    }
+
+
+    /**
+     *  Checks that a requested page size is positive.
+     *
+     *@param  pageSize  the maximum number of contractors on a page
+     */
+    private void checkPageSize(int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Invalid page size : "
+                    + pageSize);
+        }
+    }
+
+
+    /**
+     *  Finds contractors, returning a cached result if the same search has
+     *  been run since the data last changed.
+     *
+     *@param  name             the name to search for
+     *@param  location         the location to search for
+     *@param  specialities     the specialities a contractor must offer, or
+     *      null
+     *@param  bounds           the minimum and maximum size and rate, or null
+     *      to match any size and rate
+     *@return                  the record numbers of the contractors which
+     *      match the search criteria, which must not be modified
+     */
+    private long[] search(String name, String location,
+            String[] specialities, int[] bounds) {
+        return search(getQuery(name, location, specialities, bounds));
+    }
+
+
+    /**
+     *  Runs a query, returning a cached result if a query with the same key
+     *  has been run since the data last changed.
+     *
+     *@param  query            the query to run
+     *@return                  the record numbers of the contractors which
+     *      match the query, which must not be modified
+     */
+    private long[] search(Query query) {
+        String key = query.getKey();
+        /* 
+         * The version is read before searching, so a change made during the
+         * search leaves the result tagged with an out of date version.
+         */
+        long version = databaseAccess.getVersion();
+        long[] recordNumbers = searchCache.get(key, version);
+        if (recordNumbers == null) {
+            recordNumbers = databaseAccess.find(query);
+            searchCache.put(key, version, recordNumbers);
+        }
+        return recordNumbers;
+    }
+
+
+    /**
+     *  Builds the query for a search by name and location prefix,
+     *  specialities, and size and rate ranges.
+     *
+     *@param  name          the name to search for
+     *@param  location      the location to search for
+     *@param  specialities  the specialities a contractor must offer, or null
+     *@param  bounds        the minimum and maximum size and rate, or null
+     *@return               the query
+     */
+    private Query getQuery(String name, String location,
+            String[] specialities, int[] bounds) {
+        Query query = new Query();
+        query.setPrefix(Query.NAME, name);
+        query.setPrefix(Query.LOCATION, location);
+        if (specialities != null) {
+            StringBuffer list = new StringBuffer();
+            for (int i = 0; i < specialities.length; i++) {
+                list.append(specialities[i]).append(',');
+            }
+            query.setExact(Query.SPECIALITIES, list.toString());
+        }
+        if (bounds != null) {
+            query.setRange(Query.SIZE, bounds[0], bounds[1]);
+            query.setRange(Query.RATE, bounds[2], bounds[3]);
+        }
+        return query;
+    }
+
+
+    /**
+     *  Gets the contractors with the specified record numbers. Contractors
+     *  deleted since the record numbers were found are left out, so deleted
+     *  contractors are never sent to clients.
+     *
+     *@param  recordNumbers    the record numbers found by a search
+     *@return                  the list of contractors with those numbers
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    private List getContractors(long[] recordNumbers) throws IOException {
         /* This list will hold successful results of the search. */
-        List foundRecords = new ArrayList();
-        long[] recordNumbers = null;
-
-        String[] criteria = new String[3];
-        criteria[0] = "0";
-        criteria[1] = name.toLowerCase();
-        criteria[2] = location.toLowerCase();
-
-        recordNumbers = databaseAccess.findByCriteria(criteria);
-        Iterator iter = databaseAccess.getContractorList().iterator();
-        Contractor contractor = null; 
-        
-        while (iter.hasNext()) {
-            contractor = (Contractor) iter.next();
-            for (int i = 0; i < recordNumbers.length; i++) {
-                if (contractor.getRecordNo() == recordNumbers[i]) {
+        List foundRecords = new ArrayList(recordNumbers.length);
+        for (int i = 0; i < recordNumbers.length; i++) {
+            try {
+                Contractor contractor = databaseAccess.getContractor(
+                        recordNumbers[i]);
+                if (!contractor.getDeleted()) {
                     foundRecords.add(contractor);
                 }
+            } catch (RecordNotFoundException rnf) {
+                throw new IOException(rnf.getMessage());
             }
         }
         return foundRecords;
     }
 
 
+    /**
+     *  Gets the contractors currently booked by a customer. The bookings are
+     *  looked up in the owner index of the database, so only the customer's
+     *  own contractors are read.
+     *
+     *@param  customerID       the CSR the contractors are booked under
+     *@return                  the list of contractors booked by the customer
+     *@exception  IOException  thrown if there is a problem accessing the
+     *      database file
+     */
+    public List getBookings(long customerID) throws IOException {
+        return getContractors(databaseAccess.findByOwner("" + customerID));
+    }
+
+
     /**
      *  Deletes a contractor from the database.
      *
@@ -202,24 +656,17 @@ public final class ServicesImpl implements Services {
      */
     public void deleteContractor(int id)
              throws IOException, RecordNotFoundException, SecurityException {
-        /**
-         * Look through records to see if the contractor we are trying to
-         * delete is already deleted.
-         */
-        Contractor contractor = null;
-        Iterator iter = databaseAccess.getContractorList().iterator();
-        while (iter.hasNext()) {
-            contractor = (Contractor) iter.next();
-            if (contractor.getRecordNo() == id
-                    && contractor.getDeleted()) {
-                throw new RecordNotFoundException("This contractor has been"
-                        + "deleted");
-            }
-        }
-
         /* Lock the record and get the cookie. */
-        long cookie = databaseAccess.lockRecord(id);
+        long cookie = lock(id);
         try {
+            /**
+             * Check whether the contractor we are trying to delete is already
+             * deleted, now that no other client can delete it meanwhile.
+             */
+            if (databaseAccess.getContractor(id).getDeleted()) {
+                throw new RecordNotFoundException("This contractor has been "
+                        + "deleted");
+            }
             databaseAccess.deleteRecord(id, cookie);
         } catch (RecordNotFoundException rnf) {
             throw rnf;
@@ -259,8 +706,24 @@ public final class ServicesImpl implements Services {
      *  implementation.
      */
     public static synchronized ServicesImpl getInstance(File databaseFile) {
+        return getInstance(databaseFile, Data.STORAGE_FILE);
+    }
+
+
+    /**
+     *  Gets the single instance of this class, opening the database with the
+     *  specified storage mode if the instance has not yet been created.
+     *
+     *@param  databaseFile  the data file the server is to use.
+     *@param  storageMode   the storage mode used to update the data file.
+     *@return               the singleton instance of the services
+     *  implementation.
+     *@see                  suncertify.db.Data#STORAGE_MAPPED
+     */
+    public static synchronized ServicesImpl getInstance(File databaseFile,
+            String storageMode) {
         if (ref == null) {
-            ref = new ServicesImpl(databaseFile);
+            ref = new ServicesImpl(databaseFile, storageMode);
         }
         return ref;
     }
@@ -0,0 +1,77 @@
+package suncertify.db;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ *  Compares a field with a prefix using the incubating Vector API, as many
+ *  bytes per instruction as the preferred vector of the processor holds (32
+ *  or 64 bytes on current processors), so that a prefix of a name or
+ *  location field is compared in one step.
+ *  <p>
+ *  This class is kept apart from the other sources, since it can only be
+ *  compiled and run with the <code>jdk.incubator.vector</code> module:
+ *  <pre>
+ *  javac --add-modules jdk.incubator.vector -cp classes -d classes
+ *          code/vector/suncertify/db/VectorPrefixMatcher.java
+ *  java --add-modules jdk.incubator.vector ...
+ *  </pre>
+ *  <code>ContractorTable</code> uses it when it can be loaded, and otherwise
+ *  compares a byte at a time.
+ *
+ *@author     Gregory Biegel
+ *@version    1.0
+ */
+final class VectorPrefixMatcher implements PrefixMatcher {
+
+    /**
+     *  The shape of the vectors compared, the widest the processor supports.
+     */
+    private static final VectorSpecies SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    /**
+     *  The difference between an upper case ASCII letter and its lower case
+     *  equivalent.
+     */
+    private static final byte CASE_DIFFERENCE = 'a' - 'A';
+
+
+    /**
+     *  Tests whether the bytes at a position of the table begin with a
+     *  prefix, ignoring the case of ASCII letters. The field bytes are
+     *  loaded a vector at a time, masked to the length of the prefix, and
+     *  their upper case letters lowered before they are compared.
+     *
+     *@param  records  the buffer holding the records.
+     *@param  start    the position of the field in the buffer.
+     *@param  prefix   the prefix, normalized by
+     *      <code>ContractorTable.toPrefix</code>, no longer than the field.
+     *@return          true if the field begins with the prefix.
+     */
+    public boolean startsWith(ByteBuffer records, int start, byte[] prefix) {
+        int lanes = SPECIES.length();
+        for (int i = 0; i < prefix.length; i += lanes) {
+            VectorMask mask = SPECIES.indexInRange(i, prefix.length);
+            /* Masked loads are slow, so a whole vector is read if it fits. */
+            ByteVector field = start + i + lanes <= records.limit()
+                    ? ByteVector.fromByteBuffer(SPECIES, records, start + i,
+                        ByteOrder.nativeOrder())
+                    : ByteVector.fromByteBuffer(SPECIES, records, start + i,
+                        ByteOrder.nativeOrder(), mask);
+            ByteVector wanted = i + lanes <= prefix.length
+                    ? ByteVector.fromArray(SPECIES, prefix, i)
+                    : ByteVector.fromArray(SPECIES, prefix, i, mask);
+            VectorMask upper = field.compare(VectorOperators.GE, (byte) 'A')
+                    .and(field.compare(VectorOperators.LE, (byte) 'Z'));
+            field = field.add(CASE_DIFFERENCE, upper);
+            if (field.compare(VectorOperators.NE, wanted, mask).anyTrue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}